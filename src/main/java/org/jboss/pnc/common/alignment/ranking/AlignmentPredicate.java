@@ -1,7 +1,8 @@
 package org.jboss.pnc.common.alignment.ranking;
 
 import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
-import org.jboss.pnc.common.alignment.ranking.compiler.Compiler;
+import org.jboss.pnc.common.alignment.ranking.compiler.ExpressionCompiler;
+import org.jboss.pnc.common.alignment.ranking.compiler.MatchStatistics;
 import org.jboss.pnc.common.alignment.ranking.compiler.PredicateCompiler;
 import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
 import org.jboss.pnc.common.alignment.ranking.parser.DefaultParser;
@@ -13,30 +14,58 @@ import org.jboss.pnc.common.alignment.ranking.tokenizer.TokenType;
 import org.jboss.pnc.common.alignment.ranking.tokenizer.Tokenizer;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.function.Predicate;
 
 public class AlignmentPredicate implements Predicate<QualifiedVersion> {
-    private static final EnumSet<TokenType> ALLOWED_TOKENS = EnumSet.of(TokenType.QVALUE, TokenType.COMMA);
+    static final EnumSet<TokenType> ALLOWED_TOKENS = EnumSet.of(TokenType.QVALUE, TokenType.COMMA);
 
+    private final String query;
     private final Parser parser;
-    private final Compiler<Predicate<QualifiedVersion>> compiler;
+    private final PredicateCompiler compiler;
+    private final ExpressionCompiler expressionCompiler;
     private List<Token> tokens;
     private InternalNode root;
-    private Predicate<QualifiedVersion> predicate;
+    private volatile Predicate<QualifiedVersion> predicate;
+    private volatile Expression expression;
+    private MatchStatistics statistics;
+    private volatile EvaluationProfile profile;
 
     public AlignmentPredicate(String query) throws ValidationException {
         this(query, ver -> true);
     }
 
     public AlignmentPredicate(String query, Predicate<QualifiedVersion> defaultBehaviour) throws ValidationException {
+        this.query = query;
         this.parser = new DefaultParser();
         this.compiler = new PredicateCompiler();
+        this.expressionCompiler = new ExpressionCompiler();
         compile(query, defaultBehaviour);
     }
 
+    /**
+     * Creates the predicate from an already tokenized and parsed list, see {@link PrecompiledStrategy}.
+     */
+    AlignmentPredicate(
+            String query,
+            List<Token> tokens,
+            InternalNode root,
+            Predicate<QualifiedVersion> defaultBehaviour) {
+        this.query = query;
+        this.parser = new DefaultParser();
+        this.compiler = new PredicateCompiler();
+        this.expressionCompiler = new ExpressionCompiler();
+        if (query == null) {
+            this.tokens = Collections.emptyList();
+            this.predicate = defaultBehaviour;
+        } else {
+            compile(tokens, root);
+        }
+    }
+
     private void compile(String query, Predicate<QualifiedVersion> defaultBehaviour) throws ValidationException {
         if (query == null) {
             this.tokens = Collections.emptyList();
@@ -47,28 +76,152 @@ public class AlignmentPredicate implements Predicate<QualifiedVersion> {
         Tokenizer tokenizer = new GenericTokenizer(query, ALLOWED_TOKENS);
 
         // Tokens
-        this.tokens = new ArrayList<>();
+        List<Token> queryTokens = new ArrayList<>();
         while (tokenizer.hasNext()) {
-            tokens.add(tokenizer.next());
+            queryTokens.add(tokenizer.next());
         }
 
         // Syntax tree
-        this.root = parser.generateParseTree(tokens);
+        compile(queryTokens, parser.generateParseTree(queryTokens));
+    }
+
+    private void compile(List<Token> queryTokens, InternalNode rootNode) {
+        this.tokens = queryTokens;
+        this.root = rootNode;
 
         // Compiled predicate
         this.predicate = compiler.compile(root);
+        this.expression = expressionCompiler.compile(root);
+    }
+
+    /**
+     * Starts counting how often each term of the list matches. Following {@link #reoptimize()} calls use the counts to
+     * put the terms that decide most often first.
+     */
+    public synchronized void enableAdaptiveOrdering() {
+        if (statistics == null) {
+            statistics = new MatchStatistics();
+            compiler.setStatistics(statistics);
+            reoptimize();
+        }
+    }
+
+    /**
+     * Rebuilds the compiled predicate from the tokens, ordering terms by the match counts collected so far. The new
+     * predicate replaces the old one atomically, so it is safe to call while other threads are testing versions.
+     */
+    public synchronized void reoptimize() {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        if (statistics != null) {
+            statistics.clearNodes();
+        }
+        InternalNode newRoot = parser.generateParseTree(tokens);
+        this.predicate = compiler.compile(newRoot);
+        this.expression = expressionCompiler.compile(newRoot);
+        this.root = newRoot;
+    }
+
+    /**
+     * Starts counting tested versions, matches and time spent testing. Replaces any previous profile.
+     *
+     * @return the new profile
+     */
+    public EvaluationProfile enableProfiling() {
+        EvaluationProfile newProfile = new EvaluationProfile(List.of(String.valueOf(query)));
+        this.profile = newProfile;
+        return newProfile;
+    }
+
+    public void disableProfiling() {
+        this.profile = null;
+    }
+
+    /**
+     * @return current profile or null when profiling is disabled
+     */
+    public EvaluationProfile getProfile() {
+        return profile;
     }
 
     public boolean isEmpty() {
         return tokens.isEmpty();
     }
 
+    /**
+     * @return the list as it was written, null for an empty list
+     */
+    public String getQuery() {
+        return query;
+    }
+
     public List<Token> getTokens() {
         return tokens;
     }
 
+    /**
+     * @return the compiled list in analyzable form, null for an empty list (which uses the default behaviour)
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
     @Override
     public boolean test(QualifiedVersion version) {
-        return predicate.test(version);
+        EvaluationProfile currentProfile = profile;
+        if (currentProfile == null) {
+            return predicate.test(version);
+        }
+
+        long start = System.nanoTime();
+        boolean matched = predicate.test(version);
+        currentProfile.record(0, System.nanoTime() - start, matched);
+        return matched;
+    }
+
+    /**
+     * Tests all candidates at once. The candidates are indexed by qualifier value and every term of the list is turned
+     * into a bitmap of matching candidates, which is much cheaper than {@link #test(QualifiedVersion)} per candidate for
+     * long lists and many candidates.
+     *
+     * @param candidates versions to test
+     * @return bitmap with bit {@code i} set when {@code candidates.get(i)} matches
+     */
+    public BitSet testAll(List<QualifiedVersion> candidates) {
+        return testAll(new VersionIndex(candidates));
+    }
+
+    /**
+     * Same as {@link #testAll(List)} for versions that are already indexed. The index can be reused for any amount of
+     * predicates.
+     *
+     * @return bitmap with bit {@code i} set when {@code index.get(i)} matches
+     */
+    public BitSet testAll(VersionIndex index) {
+        EvaluationProfile currentProfile = profile;
+        if (currentProfile == null) {
+            return evaluate(index);
+        }
+
+        long start = System.nanoTime();
+        BitSet matched = evaluate(index);
+        currentProfile.record(0, index.size(), System.nanoTime() - start, matched.cardinality());
+        return matched;
+    }
+
+    private BitSet evaluate(VersionIndex index) {
+        Expression currentExpression = expression;
+        if (currentExpression != null) {
+            return index.matching(currentExpression);
+        }
+
+        BitSet result = new BitSet(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            if (predicate.test(index.get(i))) {
+                result.set(i);
+            }
+        }
+        return result;
     }
 }
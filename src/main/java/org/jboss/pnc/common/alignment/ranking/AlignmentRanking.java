@@ -2,10 +2,10 @@ package org.jboss.pnc.common.alignment.ranking;
 
 import lombok.AllArgsConstructor;
 import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.common.alignment.ranking.compiler.MatchStatistics;
 import org.jboss.pnc.common.alignment.ranking.compiler.RankCompiler;
 import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
 import org.jboss.pnc.common.alignment.ranking.parser.DefaultParser;
-import org.jboss.pnc.common.alignment.ranking.compiler.Compiler;
 import org.jboss.pnc.common.alignment.ranking.parser.InternalNode;
 import org.jboss.pnc.common.alignment.ranking.parser.Parser;
 import org.jboss.pnc.common.alignment.ranking.tokenizer.OrderToken;
@@ -23,7 +23,7 @@ import java.util.Set;
 import static org.jboss.pnc.api.constants.Defaults.RANK_DELIMITER;
 
 public class AlignmentRanking implements Comparator<QualifiedVersion> {
-    private static final EnumSet<TokenType> ALLOWED_TOKENS = EnumSet.of(
+    static final EnumSet<TokenType> ALLOWED_TOKENS = EnumSet.of(
             TokenType.QVALUE,
             TokenType.ORDER,
             TokenType.LOGIC,
@@ -32,7 +32,9 @@ public class AlignmentRanking implements Comparator<QualifiedVersion> {
             TokenType.SORT_BY);
     public static final Set<Character> BLACKLISTED_CHARS = Set.of(RANK_DELIMITER);
     private final Parser parser;
-    private Compiler<Comparator<QualifiedVersion>> compiler;
+    private RankCompiler compiler;
+    private MatchStatistics statistics;
+    private volatile EvaluationProfile profile;
 
     private final List<RankHolder> ranks;
 
@@ -45,6 +47,27 @@ public class AlignmentRanking implements Comparator<QualifiedVersion> {
         this.ranks = compile(alignmentRanks == null ? List.of() : alignmentRanks);
     }
 
+    /**
+     * Creates the ranking from already tokenized and parsed ranks, see {@link PrecompiledStrategy}. Ranks must include
+     * the trailing SUFFIX-VERSION rank.
+     */
+    AlignmentRanking(List<String> alignmentRanks, List<List<Token>> rankTokens, List<InternalNode> rootNodes) {
+        this.parser = new DefaultParser();
+        this.compiler = new RankCompiler(null);
+        this.ranks = new ArrayList<>();
+
+        for (int idx = 0; idx < alignmentRanks.size(); idx++) {
+            List<Token> tokens = rankTokens.get(idx);
+            boolean isDefault = tokens.size() == 1 && tokens.get(0) instanceof OrderToken;
+            if (isDefault != (idx == alignmentRanks.size() - 1)) {
+                throw new ValidationException("SUFFIX-VERSION is not last rank.");
+            }
+
+            InternalNode rootNode = rootNodes.get(idx);
+            ranks.add(new RankHolder(alignmentRanks.get(idx), tokens, rootNode, compiler.compile(rootNode)));
+        }
+    }
+
     private List<RankHolder> compile(List<String> alignmentRanks) throws ValidationException {
         List<RankHolder> rankHolders = new ArrayList<>();
 
@@ -91,24 +114,100 @@ public class AlignmentRanking implements Comparator<QualifiedVersion> {
         return tokenizedRanks;
     }
 
+    /**
+     * @return ranks as they were written, including the implicit trailing SUFFIX-VERSION
+     */
+    public List<String> getRanks() {
+        List<String> rankStrings = new ArrayList<>();
+        ranks.forEach(rank -> rankStrings.add(rank.rank));
+
+        return rankStrings;
+    }
+
     public boolean isDefault() {
         return ranks.size() == 1 && ranks.get(0).rank.equals("SUFFIX-VERSION");
     }
 
-    public void overrideVersionComparator(Comparator<String> versionComparator) {
+    public synchronized void overrideVersionComparator(Comparator<String> versionComparator) {
         this.compiler = new RankCompiler(versionComparator);
-        recompile();
+        compiler.setStatistics(statistics);
+        reoptimize();
     }
 
-    private void recompile() {
+    /**
+     * Starts counting how often each operand of AND/OR expressions in ranks matches. Following {@link #reoptimize()}
+     * calls use the counts to evaluate the operands that decide most often first.
+     */
+    public synchronized void enableAdaptiveOrdering() {
+        if (statistics == null) {
+            statistics = new MatchStatistics();
+            compiler.setStatistics(statistics);
+            reoptimize();
+        }
+    }
+
+    /**
+     * Rebuilds every rank from its tokens, ordering operands by the match counts collected so far. Ranks are replaced
+     * one by one with fresh trees, never modified while they may be in use.
+     */
+    public synchronized void reoptimize() {
+        if (statistics != null) {
+            statistics.clearNodes();
+        }
         for (int i = 0; i < ranks.size(); i++) {
             RankHolder rank = ranks.get(i);
-            ranks.set(i, new RankHolder(rank.rank, rank.tokens, rank.root, compiler.compile(rank.root)));
+            InternalNode root = parser.generateParseTree(rank.tokens);
+            ranks.set(i, new RankHolder(rank.rank, rank.tokens, root, compiler.compile(root)));
+        }
+    }
+
+    MatchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Starts counting evaluations, time and decided comparisons of each rank. Replaces any previous profile.
+     *
+     * @return the new profile
+     */
+    public EvaluationProfile enableProfiling() {
+        EvaluationProfile newProfile = new EvaluationProfile(getRanks());
+        this.profile = newProfile;
+        return newProfile;
+    }
+
+    public void disableProfiling() {
+        this.profile = null;
+    }
+
+    /**
+     * @return current profile or null when profiling is disabled
+     */
+    public EvaluationProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Finds which rank tells the versions apart, the same rank that decides {@link #compare}.
+     *
+     * @return index of the rank (see {@link #getRanks()}) or -1 when no rank prefers either version
+     */
+    public int decidingRank(QualifiedVersion ver1, QualifiedVersion ver2) {
+        for (int i = 0; i < ranks.size(); i++) {
+            if (ranks.get(i).comparator.compare(ver1, ver2) != 0) {
+                return i;
+            }
         }
+        return -1;
     }
 
     @Override
     public int compare(QualifiedVersion ver1, QualifiedVersion ver2) {
+        EvaluationProfile currentProfile = profile;
+        if (currentProfile != null) {
+            return profiledCompare(currentProfile, ver1, ver2);
+        }
+
         int result = 0;
         for (RankHolder rank : ranks) {
             result = rank.comparator.compare(ver1, ver2);
@@ -120,6 +219,20 @@ public class AlignmentRanking implements Comparator<QualifiedVersion> {
         return result;
     }
 
+    private int profiledCompare(EvaluationProfile currentProfile, QualifiedVersion ver1, QualifiedVersion ver2) {
+        int result = 0;
+        for (int i = 0; i < ranks.size(); i++) {
+            long start = System.nanoTime();
+            result = ranks.get(i).comparator.compare(ver1, ver2);
+            currentProfile.record(i, System.nanoTime() - start, result != 0);
+
+            if (result != 0) {
+                return result;
+            }
+        }
+        return result;
+    }
+
     @AllArgsConstructor
     private static class RankHolder {
         private final String rank;
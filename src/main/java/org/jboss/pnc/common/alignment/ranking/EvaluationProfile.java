@@ -0,0 +1,89 @@
+package org.jboss.pnc.common.alignment.ranking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluation counters of an {@link AlignmentRanking} (one entry per rank) or an {@link AlignmentPredicate} (single
+ * entry). Profiling is opt-in, a ranking or predicate without a profile does no counting and no timing.
+ *
+ * Safe to share between threads.
+ */
+public class EvaluationProfile {
+
+    private final List<String> labels;
+    private final LongAdder[] evaluations;
+    private final LongAdder[] nanos;
+    private final LongAdder[] decisions;
+
+    EvaluationProfile(List<String> labels) {
+        this.labels = List.copyOf(labels);
+        this.evaluations = adders(labels.size());
+        this.nanos = adders(labels.size());
+        this.decisions = adders(labels.size());
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    void record(int index, long elapsedNanos, boolean decisive) {
+        record(index, 1, elapsedNanos, decisive ? 1 : 0);
+    }
+
+    void record(int index, long count, long elapsedNanos, long decisive) {
+        evaluations[index].add(count);
+        nanos[index].add(elapsedNanos);
+        decisions[index].add(decisive);
+    }
+
+    /**
+     * @return snapshot of the counters, in rank order
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(labels.size());
+        for (int i = 0; i < labels.size(); i++) {
+            entries.add(new Entry(labels.get(i), evaluations[i].sum(), nanos[i].sum(), decisions[i].sum()));
+        }
+        return entries;
+    }
+
+    public void reset() {
+        for (int i = 0; i < labels.size(); i++) {
+            evaluations[i].reset();
+            nanos[i].reset();
+            decisions[i].reset();
+        }
+    }
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class Entry {
+        /**
+         * The rank or the list as it was written.
+         */
+        private final String label;
+
+        /**
+         * How many times the rank compared two versions, or how many versions the list tested.
+         */
+        private final long evaluations;
+
+        private final long totalNanos;
+
+        /**
+         * How many comparisons the rank decided (returned non-zero), or how many versions matched the list.
+         */
+        private final long decisions;
+    }
+}
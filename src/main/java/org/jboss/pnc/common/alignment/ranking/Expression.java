@@ -0,0 +1,58 @@
+package org.jboss.pnc.common.alignment.ranking;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.jboss.pnc.api.enums.Qualifier;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only view of a compiled {@link AlignmentPredicate}, meant for evaluating the predicate somewhere else than on
+ * one version at a time, for example by {@link VersionIndex}. Nested AND/OR expressions are flattened and qualifier
+ * terms of the same OR are merged into a single {@link Term}.
+ */
+public abstract class Expression {
+
+    private Expression() {
+    }
+
+    /**
+     * Matches versions having any of the values for the qualifier. Multi-part values are joined by a single space.
+     */
+    @Getter
+    @ToString
+    @EqualsAndHashCode(callSuper = false)
+    public static final class Term extends Expression {
+        private final Qualifier qualifier;
+        private final Set<String> values;
+
+        public Term(Qualifier qualifier, Set<String> values) {
+            this.qualifier = qualifier;
+            this.values = Set.copyOf(values);
+        }
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode(callSuper = false)
+    public static final class And extends Expression {
+        private final List<Expression> operands;
+
+        public And(List<Expression> operands) {
+            this.operands = List.copyOf(operands);
+        }
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode(callSuper = false)
+    public static final class Or extends Expression {
+        private final List<Expression> operands;
+
+        public Or(List<Expression> operands) {
+            this.operands = List.copyOf(operands);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package org.jboss.pnc.common.alignment.ranking;
+
+import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.api.enums.Qualifier;
+import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
+import org.jboss.pnc.common.alignment.ranking.parser.DefaultParser;
+import org.jboss.pnc.common.alignment.ranking.parser.InternalNode;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.LogicToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.OrderToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.QualifierToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.Token;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.TokenType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Binary form of a {@link VersionStrategy} holding the validated tokens of its ranks and lists, so that a strategy can
+ * be passed between services and loaded without tokenizing the strings again.
+ *
+ * Layout (all counts and positions are unsigned varints, strings are a varint byte length followed by UTF-8 bytes):
+ *
+ * <pre>
+ * magic "PNCS", format version (1 byte), body length, body, CRC32 of body (4 bytes)
+ * body:      rank count, rank*, list (allow), list (deny)
+ * rank:      string, tokens
+ * list:      present (1 byte), [string, tokens]
+ * tokens:    count, (token type name, pos - previous end pos, end pos - pos, payload)*
+ * payload:   QVALUE: qualifier name, part count, part*; LOGIC/ORDER: enum name; others: nothing
+ * name:      0 followed by the string on first use, afterwards 1 + index of the first use
+ * </pre>
+ *
+ * Loading checks the version and checksum, re-creates tokens through their validating constructors and builds the
+ * parse trees from them with {@link DefaultParser}. It does not run the tokenizer. Trees are not stored, the parser
+ * doesn't build plain precedence trees, so a stored tree could only be checked by parsing its tokens again.
+ *
+ * Empty lists are loaded with the same default behaviour as {@link VersionStrategy#from(List, String, String)} uses.
+ */
+final class PrecompiledStrategy {
+
+    static final int MAGIC = 0x504E4353; // "PNCS"
+
+    static final byte FORMAT_VERSION = 2;
+
+    private PrecompiledStrategy() {
+    }
+
+    static byte[] write(VersionStrategy strategy) {
+        try {
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            Writer body = new Writer(new DataOutputStream(bodyBytes));
+
+            AlignmentRanking ranking = strategy.getRanks();
+            List<String> ranks = ranking.getRanks();
+            List<List<Token>> rankTokens = ranking.getRanksAsTokens();
+            body.writeVarInt(ranks.size());
+            for (int i = 0; i < ranks.size(); i++) {
+                body.writeString(ranks.get(i));
+                body.writeTokens(rankTokens.get(i));
+            }
+            body.writeList(strategy.getAllowList());
+            body.writeList(strategy.getDenyList());
+            body.out.flush();
+
+            byte[] bodyArray = bodyBytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bodyArray);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(bodyArray.length + 16);
+            Writer out = new Writer(new DataOutputStream(bytes));
+            out.out.writeInt(MAGIC);
+            out.out.writeByte(FORMAT_VERSION);
+            out.writeVarInt(bodyArray.length);
+            out.out.write(bodyArray);
+            out.out.writeInt((int) crc.getValue());
+            out.out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // in-memory streams don't fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static VersionStrategy read(byte[] bytes) throws ValidationException {
+        try {
+            Reader in = new Reader(new DataInputStream(new ByteArrayInputStream(bytes)));
+            if (in.in.readInt() != MAGIC) {
+                throw new ValidationException("Not a precompiled strategy.");
+            }
+            byte version = in.in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new ValidationException(
+                        "Unsupported precompiled strategy version " + version + ", expected " + FORMAT_VERSION + ".");
+            }
+            byte[] bodyArray = in.readBytes(in.readVarInt());
+            CRC32 crc = new CRC32();
+            crc.update(bodyArray);
+            if (in.in.readInt() != (int) crc.getValue()) {
+                throw new ValidationException("Precompiled strategy is corrupted, checksum does not match.");
+            }
+
+            Reader body = new Reader(new DataInputStream(new ByteArrayInputStream(bodyArray)));
+            int rankCount = body.readVarInt();
+            List<String> ranks = new ArrayList<>();
+            List<List<Token>> rankTokens = new ArrayList<>();
+            List<InternalNode> roots = new ArrayList<>();
+            for (int i = 0; i < rankCount; i++) {
+                String rank = body.readString();
+                checkBlacklisted(rank);
+                List<Token> tokens = body.readTokens(AlignmentRanking.ALLOWED_TOKENS);
+                ranks.add(rank);
+                rankTokens.add(tokens);
+                roots.add(body.parser.generateParseTree(tokens));
+            }
+            AlignmentRanking ranking = new AlignmentRanking(ranks, rankTokens, roots);
+
+            AlignmentPredicate allowList = body.readList(ver -> true);
+            AlignmentPredicate denyList = body.readList(ver -> false);
+
+            if (body.in.available() > 0) {
+                throw new ValidationException("Unexpected data after the end of precompiled strategy.");
+            }
+            return new VersionStrategy(ranking, denyList, allowList);
+        } catch (IOException e) {
+            throw new ValidationException("Precompiled strategy is truncated.");
+        }
+    }
+
+    private static void checkBlacklisted(String string) {
+        for (Character c : AlignmentRanking.BLACKLISTED_CHARS) {
+            if (string.indexOf(c) >= 0) {
+                throw new ValidationException("Character '" + c + "' is not allowed.");
+            }
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+
+        /**
+         * Enum names already written, referenced by index afterwards.
+         */
+        private final Map<String, Integer> names = new HashMap<>();
+
+        private Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void writeList(AlignmentPredicate list) throws IOException {
+            if (list.getQuery() == null) {
+                out.writeBoolean(false);
+                return;
+            }
+            out.writeBoolean(true);
+            writeString(list.getQuery());
+            writeTokens(list.getTokens());
+        }
+
+        /**
+         * Positions are written relative to the end of the previous token, they are mostly one byte then.
+         */
+        private void writeTokens(List<Token> tokens) throws IOException {
+            writeVarInt(tokens.size());
+            int previousEnd = 0;
+            for (Token token : tokens) {
+                writeName(token.tokenType.name());
+                writeVarInt(token.pos - previousEnd);
+                writeVarInt(token.endPos - token.pos);
+                previousEnd = token.endPos;
+                switch (token.tokenType) {
+                    case QVALUE:
+                        var qualifierToken = (QualifierToken) token;
+                        writeName(qualifierToken.qualifier.name());
+                        writeVarInt(qualifierToken.parts.length);
+                        for (String part : qualifierToken.parts) {
+                            writeString(part);
+                        }
+                        break;
+                    case LOGIC:
+                        writeName(((LogicToken) token).logicType.name());
+                        break;
+                    case ORDER:
+                        writeName(((OrderToken) token).order.name());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private void writeName(String name) throws IOException {
+            Integer index = names.get(name);
+            if (index != null) {
+                writeVarInt(index + 1);
+                return;
+            }
+            names.put(name, names.size());
+            writeVarInt(0);
+            writeString(name);
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            int remaining = value;
+            while ((remaining & ~0x7F) != 0) {
+                out.writeByte((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            out.writeByte(remaining);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final DefaultParser parser = new DefaultParser();
+        private final List<String> names = new ArrayList<>();
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        private AlignmentPredicate readList(Predicate<QualifiedVersion> defaultBehaviour) throws IOException {
+            if (!in.readBoolean()) {
+                return new AlignmentPredicate(null, defaultBehaviour);
+            }
+            String query = readString();
+            List<Token> tokens = readTokens(AlignmentPredicate.ALLOWED_TOKENS);
+            return new AlignmentPredicate(query, tokens, parser.generateParseTree(tokens), defaultBehaviour);
+        }
+
+        private List<Token> readTokens(Set<TokenType> allowedTokens) throws IOException {
+            int count = readCount();
+            List<Token> tokens = new ArrayList<>(count);
+            int previousEnd = 0;
+            for (int i = 0; i < count; i++) {
+                TokenType type = readEnum(TokenType.class);
+                if (!allowedTokens.contains(type)) {
+                    throw new ValidationException("Token " + type + " is not allowed here.");
+                }
+                int pos = Math.addExact(previousEnd, readVarInt());
+                int endPos = Math.addExact(pos, readVarInt());
+                previousEnd = endPos;
+                switch (type) {
+                    case QVALUE:
+                        Qualifier qualifier = readEnum(Qualifier.class);
+                        String[] parts = new String[readCount()];
+                        for (int part = 0; part < parts.length; part++) {
+                            parts[part] = readString();
+                            checkBlacklisted(parts[part]);
+                        }
+                        // validates parts
+                        tokens.add(new QualifierToken(pos, endPos, qualifier, parts));
+                        break;
+                    case LOGIC:
+                        tokens.add(new LogicToken(pos, endPos, readEnum(Logic.class)));
+                        break;
+                    case ORDER:
+                        tokens.add(new OrderToken(pos, endPos, readEnum(Order.class)));
+                        break;
+                    default:
+                        tokens.add(new Token(pos, endPos, type));
+                        break;
+                }
+            }
+            return tokens;
+        }
+
+        private <T extends Enum<T>> T readEnum(Class<T> enumClass) throws IOException {
+            int reference = readVarInt();
+            String name;
+            if (reference == 0) {
+                name = readString();
+                names.add(name);
+            } else if (reference <= names.size()) {
+                name = names.get(reference - 1);
+            } else {
+                throw new ValidationException("Unknown name reference " + reference + ".");
+            }
+
+            try {
+                return Enum.valueOf(enumClass, name);
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException("Unknown " + enumClass.getSimpleName() + " '" + name + "'.");
+            }
+        }
+
+        private String readString() throws IOException {
+            return new String(readBytes(readVarInt()), StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            if (length > in.available()) {
+                throw new ValidationException("Precompiled strategy is truncated.");
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        /**
+         * Reads a count of items that take at least one byte each, so it can never exceed the remaining data.
+         */
+        private int readCount() throws IOException {
+            int count = readVarInt();
+            if (count > in.available()) {
+                throw new ValidationException("Count " + count + " exceeds the remaining precompiled data.");
+            }
+            return count;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = in.readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new ValidationException("Negative number in precompiled strategy.");
+                    }
+                    return value;
+                }
+            }
+            throw new ValidationException("Malformed number in precompiled strategy.");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.jboss.pnc.common.alignment.ranking;
+
+import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.api.enums.Qualifier;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versions with secondary indexes on qualifier values. Every value has a posting list (bitmap of positions of versions
+ * having it), so an {@link Expression} is answered by union of posting lists for OR and intersection for AND without
+ * looking at versions that don't match. Bit {@code i} of every result stands for {@code get(i)}.
+ *
+ * A qualifier is indexed the first time an expression asks for it, so qualifiers no strategy mentions cost nothing. The
+ * index is immutable otherwise and safe to share between threads.
+ */
+public class VersionIndex {
+
+    private final List<QualifiedVersion> versions;
+
+    private final Map<Qualifier, Map<String, BitSet>> postings = new ConcurrentHashMap<>();
+
+    public VersionIndex(Collection<QualifiedVersion> versions) {
+        this.versions = List.copyOf(versions);
+    }
+
+    public int size() {
+        return versions.size();
+    }
+
+    public QualifiedVersion get(int index) {
+        return versions.get(index);
+    }
+
+    public List<QualifiedVersion> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Positions of versions passing the allow list and not matching the deny list.
+     */
+    public BitSet select(AlignmentPredicate allowList, AlignmentPredicate denyList) {
+        BitSet selected = allowList.testAll(this);
+        selected.andNot(denyList.testAll(this));
+        return selected;
+    }
+
+    /**
+     * @return fresh bitmap of versions matching the expression, free to be modified by the caller
+     */
+    public BitSet matching(Expression expression) {
+        if (expression instanceof Expression.Term) {
+            var term = (Expression.Term) expression;
+            return anyOf(term.getQualifier(), term.getValues());
+        } else if (expression instanceof Expression.And) {
+            List<Expression> operands = ((Expression.And) expression).getOperands();
+            BitSet result = matching(operands.get(0));
+            for (int i = 1; i < operands.size() && !result.isEmpty(); i++) {
+                result.and(matching(operands.get(i)));
+            }
+            return result;
+        } else if (expression instanceof Expression.Or) {
+            List<Expression> operands = ((Expression.Or) expression).getOperands();
+            BitSet result = matching(operands.get(0));
+            for (int i = 1; i < operands.size() && result.cardinality() < versions.size(); i++) {
+                result.or(matching(operands.get(i)));
+            }
+            return result;
+        }
+        throw new IllegalArgumentException("Unknown Expression Type: " + expression.getClass().getCanonicalName());
+    }
+
+    private BitSet anyOf(Qualifier qualifier, Set<String> values) {
+        Map<String, BitSet> byValue = postings(qualifier);
+        BitSet result = new BitSet(versions.size());
+
+        // go over the smaller side, lists can have thousands of values while versions only a few
+        if (values.size() <= byValue.size()) {
+            for (String value : values) {
+                BitSet posting = byValue.get(value);
+                if (posting != null) {
+                    result.or(posting);
+                }
+            }
+        } else {
+            byValue.forEach((value, posting) -> {
+                if (values.contains(value)) {
+                    result.or(posting);
+                }
+            });
+        }
+        return result;
+    }
+
+    private Map<String, BitSet> postings(Qualifier qualifier) {
+        return postings.computeIfAbsent(qualifier, this::buildPostings);
+    }
+
+    private Map<String, BitSet> buildPostings(Qualifier qualifier) {
+        Map<String, BitSet> byValue = new HashMap<>();
+        for (int i = 0; i < versions.size(); i++) {
+            Set<String> values = versions.get(i).getQualifiers().get(qualifier);
+            if (values == null) {
+                continue;
+            }
+            for (String value : values) {
+                byValue.computeIfAbsent(value, v -> new BitSet(versions.size())).set(i);
+            }
+        }
+        return byValue;
+    }
+}
@@ -4,6 +4,7 @@ import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.experimental.SuperBuilder;
+import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
 
 import java.util.List;
 
@@ -33,6 +34,26 @@ public class VersionStrategy {
                 .build();
     }
 
+    /**
+     * Loads a strategy written by {@link #precompile()} without tokenizing its ranks and lists again, only the stored
+     * tokens are parsed.
+     *
+     * @param precompiled output of {@link #precompile()}, possibly from another service
+     * @return strategy equivalent to the precompiled one
+     * @throws ValidationException when the data is not a valid precompiled strategy of a supported version
+     */
+    public static VersionStrategy fromPrecompiled(byte[] precompiled) throws ValidationException {
+        return PrecompiledStrategy.read(precompiled);
+    }
+
+    /**
+     * Writes validated tokens of this strategy in a compact versioned binary format, see
+     * {@link #fromPrecompiled(byte[])}.
+     */
+    public byte[] precompile() {
+        return PrecompiledStrategy.write(this);
+    }
+
     public static VersionStrategy from(List<String> ranks, String allowList, String denyList) {
         return VersionStrategy.builder()
                 .ranks(new AlignmentRanking(ranks, null))
@@ -1,19 +1,35 @@
 package org.jboss.pnc.common.alignment.ranking.compiler;
 
+import lombok.Setter;
 import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.common.alignment.ranking.Logic;
 import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
 import org.jboss.pnc.common.alignment.ranking.parser.BinaryNode;
 import org.jboss.pnc.common.alignment.ranking.parser.InternalNode;
 import org.jboss.pnc.common.alignment.ranking.parser.LeafNode;
+import org.jboss.pnc.common.alignment.ranking.parser.MembershipNode;
 import org.jboss.pnc.common.alignment.ranking.parser.Node;
 import org.jboss.pnc.common.alignment.ranking.tokenizer.LogicToken;
 import org.jboss.pnc.common.alignment.ranking.tokenizer.QualifierToken;
 import org.jboss.pnc.common.alignment.ranking.tokenizer.TokenType;
 
+import java.util.Set;
+
 import static java.text.MessageFormat.format;
 
 public abstract class AbstractCompiler<T> implements Compiler<T> {
 
+    private final MembershipOptimizer membershipOptimizer = new MembershipOptimizer();
+
+    private final ExpressionOptimizer expressionOptimizer = new ExpressionOptimizer();
+
+    /**
+     * When set, operands of AND/OR chains count their matches and the optimizer orders them by observed selectivity on
+     * the next compilation. Null (default) means no counting at all.
+     */
+    @Setter
+    private MatchStatistics statistics;
+
     protected abstract T handleBinaryNode(BinaryNode bNode);
 
     protected abstract T handleLeafNode(LeafNode lNode);
@@ -24,6 +40,9 @@ public abstract class AbstractCompiler<T> implements Compiler<T> {
             throw new ValidationException("Empty rank is not allowed.");
         }
 
+        membershipOptimizer.optimize(rootNode);
+        expressionOptimizer.optimize(rootNode, statistics);
+
         var child = rootNode.getChildren().get(0);
         if (child instanceof BinaryNode) {
             BinaryNode bNode = (BinaryNode) child;
@@ -40,7 +59,9 @@ public abstract class AbstractCompiler<T> implements Compiler<T> {
     }
 
     protected boolean match(Node currentNode, QualifiedVersion version) {
-        if (currentNode instanceof LeafNode) {
+        if (currentNode instanceof MembershipNode) {
+            return handleMembership((MembershipNode) currentNode, version);
+        } else if (currentNode instanceof LeafNode) {
             var leaf = (LeafNode) currentNode;
             if (leaf.getToken().tokenType != TokenType.QVALUE) {
                 throw new IllegalArgumentException("Unknown leaf token. Only Qualifier:Value pairs allowed.");
@@ -73,27 +94,67 @@ public abstract class AbstractCompiler<T> implements Compiler<T> {
         return false;
     }
 
-    private boolean handleAnd(BinaryNode currentNode, QualifiedVersion version) {
-        boolean leftMatch = match(currentNode.getLeftChild(), version);
-        if (!leftMatch) {
-            // AND optimization, no need to execute the right tree
+    private boolean handleMembership(MembershipNode node, QualifiedVersion version) {
+        Set<String> versionValues = version.getQualifiers().get(node.getQualifier());
+        if (versionValues == null) {
             return false;
         }
 
-        boolean rightMatch = match(currentNode.getRightChild(), version);
+        for (String value : versionValues) {
+            if (node.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // AND/OR chains lean to the right, so the right spine is walked in a loop instead of recursing once per operand
 
-        return leftMatch && rightMatch;
+    private boolean handleAnd(BinaryNode currentNode, QualifiedVersion version) {
+        BinaryNode node = currentNode;
+        while (true) {
+            Node left = node.getLeftChild();
+            boolean leftMatch = record(left, match(left, version));
+            if (!leftMatch) {
+                // AND optimization, no need to execute the right tree
+                return false;
+            }
+
+            Node right = node.getRightChild();
+            if (!isLogic(right, Logic.AND)) {
+                return record(right, match(right, version));
+            }
+            node = (BinaryNode) right;
+        }
     }
 
     private boolean handleOr(BinaryNode currentNode, QualifiedVersion version) {
-        boolean leftMatch = match(currentNode.getLeftChild(), version);
-        if (leftMatch) {
-            // OR optimization, no need to execute the right tree
-            return true;
+        BinaryNode node = currentNode;
+        while (true) {
+            Node left = node.getLeftChild();
+            boolean leftMatch = record(left, match(left, version));
+            if (leftMatch) {
+                // OR optimization, no need to execute the right tree
+                return true;
+            }
+
+            Node right = node.getRightChild();
+            if (!MembershipOptimizer.isOr(right)) {
+                return record(right, match(right, version));
+            }
+            node = (BinaryNode) right;
         }
+    }
 
-        boolean rightMatch = match(currentNode.getRightChild(), version);
+    private boolean record(Node operand, boolean matched) {
+        if (statistics != null) {
+            statistics.record(operand, matched);
+        }
+        return matched;
+    }
 
-        return leftMatch || rightMatch;
+    private static boolean isLogic(Node node, Logic logic) {
+        return node instanceof BinaryNode && node.getToken().tokenType == TokenType.LOGIC
+                && ((LogicToken) node.getToken()).logicType == logic;
     }
 }
@@ -0,0 +1,71 @@
+package org.jboss.pnc.common.alignment.ranking.compiler;
+
+import org.jboss.pnc.common.alignment.ranking.Expression;
+import org.jboss.pnc.common.alignment.ranking.Logic;
+import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
+import org.jboss.pnc.common.alignment.ranking.parser.BinaryNode;
+import org.jboss.pnc.common.alignment.ranking.parser.InternalNode;
+import org.jboss.pnc.common.alignment.ranking.parser.LeafNode;
+import org.jboss.pnc.common.alignment.ranking.parser.MembershipNode;
+import org.jboss.pnc.common.alignment.ranking.parser.Node;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.QualifierToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Turns a predicate tree into an {@link Expression}. The tree is only read, never rewritten, so it is meant to be given
+ * a tree already compiled (and optimized) by {@link PredicateCompiler}.
+ */
+public class ExpressionCompiler implements Compiler<Expression> {
+
+    @Override
+    public Expression compile(InternalNode rootNode) {
+        if (rootNode.childrenCount() != 1) {
+            throw new ValidationException("Empty rank is not allowed.");
+        }
+
+        return toExpression(rootNode.getChildren().get(0));
+    }
+
+    private static Expression toExpression(Node node) {
+        if (node instanceof MembershipNode) {
+            var membership = (MembershipNode) node;
+            return new Expression.Term(membership.getQualifier(), membership.getValues());
+        } else if (node instanceof LeafNode) {
+            if (node.getToken().tokenType != TokenType.QVALUE) {
+                throw new IllegalArgumentException("Unknown leaf token. Only Qualifier:Value pairs allowed.");
+            }
+            var token = (QualifierToken) node.getToken();
+            return new Expression.Term(token.qualifier, Set.of(String.join(" ", token.parts)));
+        } else if (node instanceof BinaryNode) {
+            return chainToExpression((BinaryNode) node);
+        }
+        throw new IllegalArgumentException("Unknown Node Type: " + node.getClass().getCanonicalName());
+    }
+
+    /**
+     * Chains lean to the right, so the right spine is walked in a loop and only nested sub-expressions recurse.
+     */
+    private static Expression chainToExpression(BinaryNode top) {
+        Logic logic = ExpressionOptimizer.logicOf(top);
+        if (logic == null) {
+            throw new IllegalArgumentException(format("Unknown BinaryNode type {0}", top.getToken()));
+        }
+
+        List<Expression> operands = new ArrayList<>();
+        Node node = top;
+        while (node instanceof BinaryNode && ExpressionOptimizer.logicOf((BinaryNode) node) == logic) {
+            BinaryNode bNode = (BinaryNode) node;
+            operands.add(toExpression(bNode.getLeftChild()));
+            node = bNode.getRightChild();
+        }
+        operands.add(toExpression(node));
+
+        return logic == Logic.AND ? new Expression.And(operands) : new Expression.Or(operands);
+    }
+}
@@ -0,0 +1,288 @@
+package org.jboss.pnc.common.alignment.ranking.compiler;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.jboss.pnc.common.alignment.ranking.Logic;
+import org.jboss.pnc.common.alignment.ranking.parser.BinaryNode;
+import org.jboss.pnc.common.alignment.ranking.parser.InternalNode;
+import org.jboss.pnc.common.alignment.ranking.parser.LeafNode;
+import org.jboss.pnc.common.alignment.ranking.parser.MembershipNode;
+import org.jboss.pnc.common.alignment.ranking.parser.Node;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.LogicToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.QualifierToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites AND/OR chains of the parse tree in place:
+ * <ul>
+ * <li>identical operands are removed ({@code A AND A} is {@code A}),</li>
+ * <li>absorbed operands are removed ({@code A AND (A OR B)} is {@code A}, {@code A OR (A AND B)} is {@code A}),</li>
+ * <li>remaining operands are ordered so that short-circuiting is as cheap as possible. AND operands go by
+ * {@code cost / (1 - selectivity)}, OR operands by {@code cost / selectivity}, both ascending.</li>
+ * </ul>
+ * Cost and selectivity are static estimates unless {@link MatchStatistics} with enough samples are provided, in which
+ * case the observed selectivity of an operand is used.
+ *
+ * Should run after {@link MembershipOptimizer} so that a collapsed qualifier list counts as a single cheap operand.
+ */
+public class ExpressionOptimizer {
+
+    static final double LEAF_COST = 1.0;
+
+    /**
+     * Membership test hashes every value the version has for the qualifier, which is slightly more than a single
+     * {@code has} call.
+     */
+    static final double MEMBERSHIP_COST = 1.5;
+
+    /**
+     * Assumed share of versions having a specific qualifier value.
+     */
+    static final double LEAF_SELECTIVITY = 0.2;
+
+    /**
+     * Absorption compares every pair of operands, skip it for chains longer than this.
+     */
+    private static final int ABSORPTION_LIMIT = 64;
+
+    public void optimize(InternalNode rootNode) {
+        optimize(rootNode, null);
+    }
+
+    /**
+     * Optimizes the tree and registers its chain operands in {@code statistics}. Registrations of previously optimized
+     * trees are kept, so one statistics instance can serve several trees; see {@link MatchStatistics#clearNodes()}.
+     */
+    public void optimize(InternalNode rootNode, MatchStatistics statistics) {
+        if (rootNode.childrenCount() != 1) {
+            return;
+        }
+
+        Node child = rootNode.getChildren().get(0);
+        Optimized optimized = optimizeNode(child, statistics);
+        if (optimized.node != child) {
+            rootNode.switchChild(child, optimized.node);
+        }
+    }
+
+    private Optimized optimizeNode(Node node, MatchStatistics statistics) {
+        if (node instanceof MembershipNode) {
+            var membership = (MembershipNode) node;
+            double miss = Math.pow(1 - LEAF_SELECTIVITY, membership.getValues().size());
+            return new Optimized(
+                    node,
+                    new Key(membership.getQualifier().name(), membership.getValues()),
+                    MEMBERSHIP_COST,
+                    1 - miss);
+        }
+        if (node instanceof LeafNode) {
+            if (node.getToken().tokenType != TokenType.QVALUE) {
+                return new Optimized(node, new Key(node.getToken().toString(), Set.of()), LEAF_COST, 1.0);
+            }
+            var token = (QualifierToken) node.getToken();
+            return new Optimized(
+                    node,
+                    new Key(token.qualifier.name(), Set.of(String.join(" ", token.parts))),
+                    LEAF_COST,
+                    LEAF_SELECTIVITY);
+        }
+
+        BinaryNode bNode = (BinaryNode) node;
+        Logic logic = logicOf(bNode);
+        if (logic == null) {
+            // SORT_BY, only the matching part on the left can be optimized
+            Node left = bNode.getLeftChild();
+            Optimized optimizedLeft = optimizeNode(left, statistics);
+            if (optimizedLeft.node != left) {
+                bNode.switchChild(left, optimizedLeft.node);
+            }
+            String order = bNode.getRightChild().getToken().toString();
+            return new Optimized(
+                    bNode,
+                    new Key(TokenType.SORT_BY.name(), Set.of(optimizedLeft.key, order)),
+                    optimizedLeft.cost,
+                    optimizedLeft.selectivity);
+        }
+
+        return optimizeChain(bNode, logic, statistics);
+    }
+
+    private Optimized optimizeChain(BinaryNode top, Logic logic, MatchStatistics statistics) {
+        List<Node> operands = collectOperands(top, logic);
+
+        // optimize operands and drop duplicates
+        Map<Key, Optimized> unique = new LinkedHashMap<>();
+        for (Node operand : operands) {
+            Optimized optimized = optimizeNode(operand, statistics);
+            unique.putIfAbsent(optimized.key, optimized);
+        }
+        List<Optimized> optimizedOperands = new ArrayList<>(unique.values());
+
+        if (optimizedOperands.size() <= ABSORPTION_LIMIT) {
+            optimizedOperands = absorb(optimizedOperands, logic);
+        }
+
+        for (Optimized operand : optimizedOperands) {
+            if (statistics != null) {
+                Double observed = statistics.selectivity(operand.key);
+                if (observed != null) {
+                    operand.selectivity = observed;
+                }
+            }
+        }
+        optimizedOperands.sort(Comparator.comparingDouble(operand -> rank(operand, logic)));
+
+        Node chain = rebuild(top, operands, optimizedOperands);
+        if (statistics != null) {
+            optimizedOperands.forEach(operand -> statistics.register(operand.node, operand.key));
+        }
+
+        Set<Key> keys = new HashSet<>();
+        optimizedOperands.forEach(operand -> keys.add(operand.key));
+        Optimized result = new Optimized(chain, new Key(logic.name(), keys), 0, 0);
+        estimate(result, optimizedOperands, logic);
+        return result;
+    }
+
+    /**
+     * Removes operands implied by another operand of the chain. For AND, an OR operand whose alternatives contain all
+     * alternatives of some other operand is redundant. Dually for OR.
+     */
+    private static List<Optimized> absorb(List<Optimized> operands, Logic logic) {
+        String dual = logic == Logic.AND ? Logic.OR.name() : Logic.AND.name();
+
+        List<Optimized> kept = new ArrayList<>();
+        for (Optimized candidate : operands) {
+            boolean absorbed = false;
+            if (candidate.key.kind.equals(dual)) {
+                for (Optimized other : operands) {
+                    if (other != candidate && candidate.key.parts.containsAll(dualParts(other.key, dual))) {
+                        absorbed = true;
+                        break;
+                    }
+                }
+            }
+            if (!absorbed) {
+                kept.add(candidate);
+            }
+        }
+        return kept;
+    }
+
+    private static Set<?> dualParts(Key key, String dual) {
+        return key.kind.equals(dual) ? key.parts : Set.of(key);
+    }
+
+    private static double rank(Optimized operand, Logic logic) {
+        // operands that never decide the chain go last
+        double decisive = logic == Logic.AND ? 1 - operand.selectivity : operand.selectivity;
+        if (decisive <= 0) {
+            return Double.MAX_VALUE;
+        }
+        return operand.cost / decisive;
+    }
+
+    /**
+     * Expected cost of evaluating the chain in the given order with short-circuiting, and the chance it matches.
+     */
+    private static void estimate(Optimized chain, List<Optimized> operands, Logic logic) {
+        double cost = 0;
+        double reach = 1; // probability that evaluation gets to the current operand
+        double selectivity = logic == Logic.AND ? 1 : 0;
+        for (Optimized operand : operands) {
+            cost += reach * operand.cost;
+            if (logic == Logic.AND) {
+                reach *= operand.selectivity;
+                selectivity *= operand.selectivity;
+            } else {
+                reach *= 1 - operand.selectivity;
+                selectivity = 1 - (1 - selectivity) * (1 - operand.selectivity);
+            }
+        }
+        chain.cost = cost;
+        chain.selectivity = selectivity;
+    }
+
+    private static Node rebuild(BinaryNode top, List<Node> original, List<Optimized> operands) {
+        if (operands.size() == original.size()) {
+            boolean same = true;
+            for (int i = 0; i < operands.size(); i++) {
+                same &= operands.get(i).node == original.get(i);
+            }
+            if (same) {
+                return top;
+            }
+        }
+
+        Node chain = operands.get(operands.size() - 1).node;
+        for (int i = operands.size() - 2; i >= 0; i--) {
+            BinaryNode bNode = new BinaryNode(top.getToken());
+            bNode.setLeftChild(operands.get(i).node);
+            bNode.setRightChild(chain);
+            chain = bNode;
+        }
+        return chain;
+    }
+
+    private static List<Node> collectOperands(BinaryNode top, Logic logic) {
+        List<Node> operands = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(top);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node instanceof BinaryNode && logicOf((BinaryNode) node) == logic) {
+                BinaryNode bNode = (BinaryNode) node;
+                stack.push(bNode.getRightChild());
+                stack.push(bNode.getLeftChild());
+            } else {
+                operands.add(node);
+            }
+        }
+        return operands;
+    }
+
+    /**
+     * @return AND/OR for logic nodes (comma being OR), null for anything else
+     */
+    static Logic logicOf(BinaryNode node) {
+        switch (node.getToken().tokenType) {
+            case COMMA:
+                return Logic.OR;
+            case LOGIC:
+                return ((LogicToken) node.getToken()).logicType;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Structural identity of a sub-expression. Operands of AND/OR are kept in a set, so operand order does not matter.
+     * Qualifier terms are keyed by qualifier and the set of values, so a single term equals a membership test of one
+     * value.
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    static final class Key {
+        private final String kind;
+        private final Set<?> parts;
+    }
+
+    @AllArgsConstructor
+    private static final class Optimized {
+        private final Node node;
+        private final Key key;
+        private double cost;
+        private double selectivity;
+    }
+}
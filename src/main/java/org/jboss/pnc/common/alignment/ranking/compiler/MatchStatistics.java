@@ -0,0 +1,83 @@
+package org.jboss.pnc.common.alignment.ranking.compiler;
+
+import org.jboss.pnc.common.alignment.ranking.parser.Node;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime match counters for operands of AND/OR chains. Counters are keyed by the structure of the sub-expression, so
+ * they survive re-parsing the same strategy and can be fed back to {@link ExpressionOptimizer} to order operands by
+ * observed selectivity instead of the static estimate.
+ *
+ * Safe to share between threads evaluating the same predicate or ranking.
+ */
+public class MatchStatistics {
+
+    /**
+     * Minimal amount of evaluations of an operand before its observed selectivity replaces the static estimate.
+     */
+    public static final long MIN_SAMPLES = 100;
+
+    private final Map<ExpressionOptimizer.Key, Counter> byKey = new ConcurrentHashMap<>();
+
+    private final Map<Node, Counter> byNode = new ConcurrentHashMap<>();
+
+    void register(Node node, ExpressionOptimizer.Key key) {
+        byNode.put(node, byKey.computeIfAbsent(key, k -> new Counter()));
+    }
+
+    /**
+     * Forgets nodes of all registered trees. Call once before recompiling every tree that shares these statistics.
+     * Counters themselves are kept.
+     */
+    public void clearNodes() {
+        byNode.clear();
+    }
+
+    void record(Node node, boolean matched) {
+        Counter counter = byNode.get(node);
+        if (counter != null) {
+            counter.evaluations.increment();
+            if (matched) {
+                counter.matches.increment();
+            }
+        }
+    }
+
+    /**
+     * @return observed share of evaluations that matched, or null when there are not enough samples yet
+     */
+    Double selectivity(ExpressionOptimizer.Key key) {
+        Counter counter = byKey.get(key);
+        if (counter == null) {
+            return null;
+        }
+        long evaluations = counter.evaluations.sum();
+        if (evaluations < MIN_SAMPLES) {
+            return null;
+        }
+        // smoothed so that 0 and 1 stay orderable
+        return (counter.matches.sum() + 0.5) / (evaluations + 1.0);
+    }
+
+    /**
+     * @return number of recorded operand evaluations across all counters
+     */
+    public long getEvaluations() {
+        return byKey.values().stream().mapToLong(counter -> counter.evaluations.sum()).sum();
+    }
+
+    public void reset() {
+        byKey.values().forEach(counter -> {
+            counter.evaluations.reset();
+            counter.matches.reset();
+        });
+    }
+
+    private static class Counter {
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder matches = new LongAdder();
+    }
+}
@@ -0,0 +1,146 @@
+package org.jboss.pnc.common.alignment.ranking.compiler;
+
+import org.jboss.pnc.api.enums.Qualifier;
+import org.jboss.pnc.common.alignment.ranking.Logic;
+import org.jboss.pnc.common.alignment.ranking.parser.BinaryNode;
+import org.jboss.pnc.common.alignment.ranking.parser.InternalNode;
+import org.jboss.pnc.common.alignment.ranking.parser.LeafNode;
+import org.jboss.pnc.common.alignment.ranking.parser.MembershipNode;
+import org.jboss.pnc.common.alignment.ranking.parser.Node;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.LogicToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.QualifierToken;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the parse tree in place so that every OR/comma chain groups its QUALIFIER:VALUE terms by qualifier. Groups of
+ * two or more terms are replaced by a single {@link MembershipNode}. A deny list like
+ * {@code PRODUCT:A, PRODUCT:B, ..., QUALITY:X} is then evaluated with one hash lookup per qualifier value of a version
+ * instead of a walk over thousands of leaves.
+ *
+ * The tree is walked with explicit stacks, so chains of any length are safe. Running it on an already optimized tree
+ * changes nothing.
+ */
+public class MembershipOptimizer {
+
+    public void optimize(InternalNode rootNode) {
+        Deque<Node> toVisit = new ArrayDeque<>();
+        rootNode.getChildren().forEach(toVisit::push);
+
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            if (!(node instanceof BinaryNode)) {
+                continue;
+            }
+            BinaryNode bNode = (BinaryNode) node;
+
+            if (!isOr(bNode)) {
+                toVisit.push(bNode.getLeftChild());
+                toVisit.push(bNode.getRightChild());
+                continue;
+            }
+
+            List<Node> operands = collectOrOperands(bNode);
+            List<Node> collapsed = collapse(operands);
+            if (collapsed.size() < operands.size()) {
+                bNode.getParent().switchChild(bNode, buildChain(bNode, collapsed));
+            }
+            // operands are never OR nodes themselves, nested chains can only hide behind AND/SORT_BY
+            collapsed.forEach(toVisit::push);
+        }
+    }
+
+    static boolean isOr(Node node) {
+        if (!(node instanceof BinaryNode)) {
+            return false;
+        }
+        var token = node.getToken();
+        return token.tokenType == TokenType.COMMA
+                || (token.tokenType == TokenType.LOGIC && ((LogicToken) token).logicType == Logic.OR);
+    }
+
+    /**
+     * Flattens the maximal OR subtree under top into its operands, in source order.
+     */
+    static List<Node> collectOrOperands(BinaryNode top) {
+        List<Node> operands = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(top);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (isOr(node)) {
+                BinaryNode bNode = (BinaryNode) node;
+                stack.push(bNode.getRightChild());
+                stack.push(bNode.getLeftChild());
+            } else {
+                operands.add(node);
+            }
+        }
+        return operands;
+    }
+
+    private static List<Node> collapse(List<Node> operands) {
+        Map<Qualifier, List<LeafNode>> groups = new EnumMap<>(Qualifier.class);
+        for (Node operand : operands) {
+            if (isQualifierLeaf(operand)) {
+                var token = (QualifierToken) operand.getToken();
+                groups.computeIfAbsent(token.qualifier, q -> new ArrayList<>()).add((LeafNode) operand);
+            }
+        }
+
+        List<Node> collapsed = new ArrayList<>();
+        for (Node operand : operands) {
+            if (!isQualifierLeaf(operand)) {
+                collapsed.add(operand);
+                continue;
+            }
+
+            var qualifier = ((QualifierToken) operand.getToken()).qualifier;
+            List<LeafNode> group = groups.get(qualifier);
+            if (group.size() == 1) {
+                collapsed.add(operand);
+            } else if (group.get(0) == operand) {
+                // the whole group takes the place of its first term
+                collapsed.add(new MembershipNode(tokensOf(group)));
+            }
+        }
+        return collapsed;
+    }
+
+    private static boolean isQualifierLeaf(Node node) {
+        return node instanceof LeafNode && node.getToken().tokenType == TokenType.QVALUE;
+    }
+
+    private static List<QualifierToken> tokensOf(List<LeafNode> group) {
+        List<QualifierToken> tokens = new ArrayList<>();
+        for (LeafNode leaf : group) {
+            if (leaf instanceof MembershipNode) {
+                tokens.addAll(((MembershipNode) leaf).getTokens());
+            } else {
+                tokens.add((QualifierToken) leaf.getToken());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Re-links operands into a right-leaning chain of OR nodes carrying the token of the original chain.
+     */
+    private static Node buildChain(BinaryNode original, List<Node> operands) {
+        Node chain = operands.get(operands.size() - 1);
+        for (int i = operands.size() - 2; i >= 0; i--) {
+            BinaryNode orNode = new BinaryNode(original.getToken());
+            orNode.setLeftChild(operands.get(i));
+            orNode.setRightChild(chain);
+            chain = orNode;
+        }
+        return chain;
+    }
+}
@@ -66,7 +66,7 @@ public class DefaultParser implements Parser {
         InternalNode rootNode = new UnaryNode();
 
         validateInput(tokens);
-        createParseTree(rootNode, 0, tokens, 0);
+        createParseTree(rootNode, tokens);
 
         return rootNode;
     }
@@ -95,79 +95,83 @@ public class DefaultParser implements Parser {
         return tokens.get(toPeek).tokenType;
     }
 
-    private void createParseTree(InternalNode currentNode, int tokenIdx, List<Token> tokens, int parenChecker)
-            throws ValidationException {
-        if (tokenIdx >= tokens.size()) {
-            if (parenChecker != 0) {
-                throw new ValidationException(
-                        "Amount of parentheses do not match. Expecting another " + parenChecker + ".",
-                        tokens.get(tokens.size() - 1).endPos);
-            }
-            return;
-        }
-
-        Token token = tokens.get(tokenIdx);
-        InternalNode next;
-        switch (token.tokenType) {
-            case QVALUE:
-            case ORDER: {
-                addLeaf(currentNode, token);
+    /**
+     * Builds the tree token by token. Iterative on purpose: allow/deny lists can have tens of thousands of terms and a
+     * recursive descent of one frame per token would overflow the stack.
+     */
+    private void createParseTree(InternalNode rootNode, List<Token> tokens) throws ValidationException {
+        InternalNode currentNode = rootNode;
+        int parenChecker = 0;
 
-                next = currentNode;
-                break;
-            }
-            case COMMA:
-            case LOGIC: {
-                BinaryNode newNode = addBinaryNode(currentNode, token);
+        for (Token token : tokens) {
+            InternalNode next;
+            switch (token.tokenType) {
+                case QVALUE:
+                case ORDER: {
+                    addLeaf(currentNode, token);
 
-                next = newNode;
-                break;
-            }
-            case LPAREN: {
-                var parenthesesWrapper = new UnaryNode(token);
-                parenChecker++;
-
-                if (currentNode instanceof UnaryNode) {
-                    ((UnaryNode) currentNode).setChild(parenthesesWrapper);
-                } else if (currentNode instanceof BinaryNode) {
-                    ((BinaryNode) currentNode).setRightChild(parenthesesWrapper);
+                    next = currentNode;
+                    break;
                 }
+                case COMMA:
+                case LOGIC: {
+                    BinaryNode newNode = addBinaryNode(currentNode, token);
 
-                next = parenthesesWrapper;
-                break;
-            }
-            case RPAREN: {
-                if (parenChecker <= 0) {
-                    throw new ValidationException("Illegal ')' placement.", token);
+                    next = newNode;
+                    break;
                 }
-                parenChecker--;
+                case LPAREN: {
+                    var parenthesesWrapper = new UnaryNode(token);
+                    parenChecker++;
 
-                Node node = currentNode.getParent();
-                while (!(node instanceof UnaryNode)) {
-                    node = node.getParent();
-                }
-                UnaryNode leftParenNode = (UnaryNode) node;
-                InternalNode parenParent = leftParenNode.getParent();
-                Node parenChild = leftParenNode.getChild();
+                    if (currentNode instanceof UnaryNode) {
+                        ((UnaryNode) currentNode).setChild(parenthesesWrapper);
+                    } else if (currentNode instanceof BinaryNode) {
+                        ((BinaryNode) currentNode).setRightChild(parenthesesWrapper);
+                    }
 
-                leftParenNode.removeChild(parenChild);
-                parenParent.switchChild(leftParenNode, parenChild);
+                    next = parenthesesWrapper;
+                    break;
+                }
+                case RPAREN: {
+                    if (parenChecker <= 0) {
+                        throw new ValidationException("Illegal ')' placement.", token);
+                    }
+                    parenChecker--;
+
+                    Node node = currentNode.getParent();
+                    while (!(node instanceof UnaryNode)) {
+                        node = node.getParent();
+                    }
+                    UnaryNode leftParenNode = (UnaryNode) node;
+                    InternalNode parenParent = leftParenNode.getParent();
+                    Node parenChild = leftParenNode.getChild();
+
+                    leftParenNode.removeChild(parenChild);
+                    parenParent.switchChild(leftParenNode, parenChild);
+
+                    next = parenParent;
+                    break;
+                }
+                case SORT_BY: {
+                    BinaryNode sortNode = new BinaryNode(token);
+                    InternalNode treeRoot = findRoot(currentNode);
+                    pushDown((UnaryNode) treeRoot, sortNode);
 
-                next = parenParent;
-                break;
+                    next = sortNode;
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unsupported token in token list");
             }
-            case SORT_BY: {
-                BinaryNode sortNode = new BinaryNode(token);
-                InternalNode rootNode = findRoot(currentNode);
-                pushDown((UnaryNode) rootNode, sortNode);
+            currentNode = next;
+        }
 
-                next = sortNode;
-                break;
-            }
-            default:
-                throw new IllegalArgumentException("Unsupported token in token list");
+        if (parenChecker != 0) {
+            throw new ValidationException(
+                    "Amount of parentheses do not match. Expecting another " + parenChecker + ".",
+                    tokens.get(tokens.size() - 1).endPos);
         }
-        createParseTree(next, ++tokenIdx, tokens, parenChecker);
     }
 
     private static void addLeaf(InternalNode currentNode, Token token) {
@@ -0,0 +1,59 @@
+package org.jboss.pnc.common.alignment.ranking.parser;
+
+import org.jboss.pnc.api.enums.Qualifier;
+import org.jboss.pnc.common.alignment.ranking.tokenizer.QualifierToken;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Leaf that replaces a flat OR/comma chain of QUALIFIER:VALUE terms over the same qualifier. It matches when the version
+ * has any of the values, which is a hash lookup instead of one {@link LeafNode} evaluation per term.
+ *
+ * Values are kept the same way {@link org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion} keeps them, multi-part
+ * values joined by a single space.
+ */
+public class MembershipNode extends LeafNode {
+
+    private final Qualifier qualifier;
+
+    private final Set<String> values;
+
+    private final List<QualifierToken> tokens;
+
+    /**
+     * @param tokens QUALIFIER:VALUE tokens of the collapsed chain, all with the same qualifier
+     */
+    public MembershipNode(List<QualifierToken> tokens) {
+        super(tokens.get(0));
+        this.qualifier = tokens.get(0).qualifier;
+        this.tokens = Collections.unmodifiableList(tokens);
+
+        this.values = new HashSet<>();
+        for (QualifierToken token : tokens) {
+            if (token.qualifier != qualifier) {
+                throw new IllegalArgumentException(
+                        "Cannot mix qualifiers " + qualifier + " and " + token.qualifier + " in one membership test.");
+            }
+            values.add(String.join(" ", token.parts));
+        }
+    }
+
+    public Qualifier getQualifier() {
+        return qualifier;
+    }
+
+    public Set<String> getValues() {
+        return Collections.unmodifiableSet(values);
+    }
+
+    public List<QualifierToken> getTokens() {
+        return tokens;
+    }
+
+    public boolean contains(String value) {
+        return values.contains(value);
+    }
+}
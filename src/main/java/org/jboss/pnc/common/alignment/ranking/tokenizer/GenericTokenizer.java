@@ -7,29 +7,55 @@ import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
 
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GenericTokenizer implements Tokenizer {
 
     static final byte EOL = 25;
-    private final Set<TokenType> allowedTokens;
 
-    private final Set<TokenType> charKindTokens;
-    private final Set<Character> charKindChars;
-
-    private final Set<TokenType> literalKindTokens;
-
-    private final Set<TokenType> enumTokens;
-
-    private final Set<TokenType> stringKindTypes;
+    /**
+     * Accepted spellings of LITERAL and ENUM tokens, indexed by {@link TokenType#ordinal()}.
+     */
+    private static final String[][] TOKEN_VALUES = new String[TokenType.values().length][];
+
+    /**
+     * CHAR tokens by their character. Characters are recognized regardless of allowed tokens, the parser rejects them.
+     */
+    private static final TokenType[] CHAR_TOKENS = new TokenType[128];
+
+    /**
+     * Lookup tables depend only on allowed tokens and blacklisted characters, which are constants at all call sites, so
+     * they are computed once per combination and shared between instances.
+     */
+    private static final Map<Set<TokenType>, Map<Set<Character>, Tables>> TABLES = new ConcurrentHashMap<>();
+
+    static {
+        for (TokenType type : TokenType.values()) {
+            switch (type.kind) {
+                case CHAR:
+                    CHAR_TOKENS[type.charLiteral] = type;
+                    TOKEN_VALUES[type.ordinal()] = new String[0];
+                    break;
+                case LITERAL:
+                    TOKEN_VALUES[type.ordinal()] = new String[] { type.literal };
+                    break;
+                case ENUM:
+                    TOKEN_VALUES[type.ordinal()] = type.getEnumValues().toArray(new String[0]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown TokenKind.");
+            }
+        }
+    }
 
-    private final Set<Character> blacklistedChars;
+    private final Tables tables;
 
     private final StringBuilder buffer;
     private TokenType tokenType;
+    private String tokenValue;
+    private int valuesStart;
     private char character;
     private int position;
     private boolean incPosition;
@@ -50,20 +76,7 @@ public class GenericTokenizer implements Tokenizer {
         this.character = '\0';
         this.position = 0;
 
-        this.allowedTokens = allowedTokens;
-        this.charKindTokens = allowedTokens.stream()
-                .filter(tt -> tt.kind == TokenKind.CHAR)
-                .collect(Collectors.toSet());
-        this.charKindChars = charKindTokens.stream().map(t -> t.charLiteral).collect(Collectors.toSet());
-        this.literalKindTokens = allowedTokens.stream()
-                .filter(tt -> tt.kind == TokenKind.LITERAL)
-                .collect(Collectors.toSet());
-        this.enumTokens = allowedTokens.stream().filter(tt -> tt.kind == TokenKind.ENUM).collect(Collectors.toSet());
-
-        this.stringKindTypes = Stream.concat(literalKindTokens.stream(), enumTokens.stream())
-                .collect(Collectors.toSet());
-
-        this.blacklistedChars = blacklistedChars;
+        this.tables = tablesFor(allowedTokens, blacklistedChars);
 
         // don't increase position for first char
         this.incPosition = false;
@@ -71,6 +84,22 @@ public class GenericTokenizer implements Tokenizer {
         nextChar();
     }
 
+    private static Tables tablesFor(Set<TokenType> allowedTokens, Set<Character> blacklistedChars) {
+        Map<Set<Character>, Tables> byBlacklist = TABLES.get(allowedTokens);
+        if (byBlacklist == null) {
+            Set<TokenType> key = allowedTokens.isEmpty() ? EnumSet.noneOf(TokenType.class)
+                    : EnumSet.copyOf(allowedTokens);
+            byBlacklist = TABLES.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+
+        Tables tables = byBlacklist.get(blacklistedChars);
+        if (tables == null) {
+            Tables computed = new Tables(allowedTokens, blacklistedChars);
+            tables = byBlacklist.computeIfAbsent(Set.copyOf(blacklistedChars), k -> computed);
+        }
+        return tables;
+    }
+
     private char get() {
         return character;
     }
@@ -89,7 +118,7 @@ public class GenericTokenizer implements Tokenizer {
     }
 
     private void changeChar() {
-        if (blacklistedChars.contains(character)) {
+        if (tables.isBlacklisted(character)) {
             throw new ValidationException("Character '" + character + "' is not allowed.", position);
         }
         if (hasChar()) {
@@ -121,16 +150,6 @@ public class GenericTokenizer implements Tokenizer {
         return false;
     }
 
-    private boolean acceptIf(Predicate<Character> condition) {
-        if (condition.test(get())) {
-            nextChar();
-
-            return true;
-        }
-
-        return false;
-    }
-
     private void rollback(int pos) {
         this.position = pos;
         this.incPosition = false;
@@ -146,8 +165,8 @@ public class GenericTokenizer implements Tokenizer {
 
         int savePosition = position;
 
-        for (char c : string.toCharArray()) {
-            if (!isCurChar(c)) {
+        for (int i = 0; i < string.length(); i++) {
+            if (character != string.charAt(i)) {
                 rollback(savePosition);
 
                 return false;
@@ -159,6 +178,14 @@ public class GenericTokenizer implements Tokenizer {
         return true;
     }
 
+    private boolean isCurChar(char c) {
+        return character == c;
+    }
+
+    private boolean isCurChar(char c1, char c2) {
+        return character == c1 || character == c2;
+    }
+
     private boolean isCurChar(char... chars) {
         for (char c : chars) {
             if (character == c) {
@@ -210,17 +237,15 @@ public class GenericTokenizer implements Tokenizer {
 
         switch (tokenType) {
             case QVALUE:
-                String[] qValue = buffer.toString().split(":", 2);
-
-                Qualifier qualifier = Qualifier.valueOf(sanitize(qValue[0]));
-                String[] values = qValue[1].trim().split("\\s+");
+                Qualifier qualifier = Qualifier.valueOf(tokenValue);
+                String[] values = splitWords(valuesStart);
 
                 return new QualifierToken(savePos, position, qualifier, values);
             case LOGIC:
-                Logic logic = Logic.valueOf(sanitize(buffer.toString()));
+                Logic logic = Logic.valueOf(tokenValue);
                 return new LogicToken(savePos, position, logic);
             case ORDER:
-                Order order = Order.valueOf(sanitize(buffer.toString()));
+                Order order = Order.valueOf(tokenValue);
                 return new OrderToken(savePos, position, order);
             case LPAREN:
                 return new Token(savePos, position, TokenType.LPAREN);
@@ -235,36 +260,19 @@ public class GenericTokenizer implements Tokenizer {
         }
     }
 
-    private String sanitize(String input) {
-        return input.toUpperCase().replace('-', '_');
-    }
-
     private boolean tryParseCharToken() {
-        for (var type : TokenType.values()) {
-            switch (type) {
-                case QVALUE:
-                case LOGIC:
-                case SORT_BY:
-                case ORDER:
-                    continue;
-                case COMMA:
-                case LPAREN:
-                case RPAREN:
-                    if (isCurChar(type.charLiteral)) {
-                        accept(type.charLiteral);
-                        tokenType = type;
-                        return true;
-                    }
-                    continue;
-                default:
-                    return false;
-            }
+        char c = get();
+        TokenType type = c < CHAR_TOKENS.length ? CHAR_TOKENS[c] : null;
+        if (type == null) {
+            return false;
         }
-        return false;
+        accept(type.charLiteral);
+        tokenType = type;
+        return true;
     }
 
     private boolean tryParseStringToken() {
-        for (var type : stringKindTypes) {
+        for (var type : tables.stringKindTypes) {
             switch (type) {
                 case LOGIC:
                 case SORT_BY:
@@ -278,7 +286,7 @@ public class GenericTokenizer implements Tokenizer {
                     if (bufferHas(TokenType.QVALUE)) {
                         // QUALIFIER__:__VALUES
                         tokenType = TokenType.QVALUE;
-                        Qualifier qualifier = bufferGet(Qualifier.class); // QUALIFIER
+                        Qualifier qualifier = Qualifier.valueOf(tokenValue); // QUALIFIER
                         skipWhitespaces();
                         if (!isCurChar(':')) {
                             throw new ValidationException(
@@ -288,6 +296,7 @@ public class GenericTokenizer implements Tokenizer {
                         }
                         put(); // add ':' to buffer
                         nextChar(); // go to VALUES
+                        valuesStart = buffer.length();
 
                         skipWhitespaces();
                         if (isCurChar('\'', '\"')) { // Quoted VALUES
@@ -310,10 +319,7 @@ public class GenericTokenizer implements Tokenizer {
                         }
                         return true;
                     }
-                case LPAREN: // char tokens are handled on empty buffer
-                case RPAREN:
-                case COMMA:
-                    continue;
+                    break;
                 default:
                     return false;
             }
@@ -329,91 +335,196 @@ public class GenericTokenizer implements Tokenizer {
         nextChar();
         int save = buffer.length();
 
-        while (acceptAndPutIf(ch -> ch != quote && hasChar())) {
+        while (get() != quote && hasChar()) {
+            put();
+            nextChar();
         }
 
         if (!hasChar()) {
             throw new ValidationException("Reached the end of buffer without ending quote " + quote, savePos, position);
         }
 
-        if (parts > 1) {
-            String quotedString = buffer.substring(save).trim();
-            String[] split = quotedString.split("\\s+");
-            if (split.length != parts) {
-                throw new ValidationException(
-                        "Quoted string should have exactly " + parts + " amount of words.",
-                        savePos,
-                        position);
-            }
+        if (parts > 1 && countWords(save) != parts) {
+            throw new ValidationException(
+                    "Quoted string should have exactly " + parts + " amount of words.",
+                    savePos,
+                    position);
         }
         nextChar();
     }
 
-    private boolean acceptAndPutIf(Predicate<Character> condition) {
-        if (condition.test(get())) {
-            put();
-            nextChar();
+    /**
+     * Splits the buffer from the given index the same way {@code buffer.substring(from).trim().split("\\s+")} would.
+     */
+    private String[] splitWords(int from) {
+        int end = trimmedEnd(from);
+        int start = trimmedStart(from, end);
+
+        String[] words = new String[countWords(start, end)];
+        int word = 0;
+        int wordStart = start;
+        for (int i = start; i < end; i++) {
+            if (isRegexWhitespace(buffer.charAt(i))) {
+                if (wordStart < i) {
+                    words[word++] = buffer.substring(wordStart, i);
+                }
+                wordStart = i + 1;
+            }
+        }
+        words[word] = buffer.substring(wordStart, end);
+        return words;
+    }
 
-            return true;
+    private int countWords(int from) {
+        int end = trimmedEnd(from);
+        return countWords(trimmedStart(from, end), end);
+    }
+
+    private int countWords(int start, int end) {
+        // trimmed region never starts or ends with whitespace, empty region still splits into one empty word
+        int words = 1;
+        for (int i = start + 1; i < end; i++) {
+            if (isRegexWhitespace(buffer.charAt(i)) && !isRegexWhitespace(buffer.charAt(i - 1))) {
+                words++;
+            }
         }
+        return words;
+    }
 
-        return false;
+    private int trimmedEnd(int from) {
+        int end = buffer.length();
+        while (end > from && buffer.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
     }
 
-    private void skipWhitespaces() {
-        while (acceptIf(Character::isWhitespace)) {
+    private int trimmedStart(int from, int end) {
+        int start = from;
+        while (start < end && buffer.charAt(start) <= ' ') {
+            start++;
         }
+        return start;
     }
 
-    private <T extends Enum<T>> T bufferGet(Class<T> enumClass) {
-        return T.valueOf(enumClass, sanitize(buffer.toString()));
+    private static boolean isRegexWhitespace(char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                return true;
+            default:
+                return false;
+        }
     }
 
-    private <T extends Enum<T>> boolean bufferHas(Class<T> enumClass) {
-        try {
-            T.valueOf(enumClass, sanitize(buffer.toString()));
-        } catch (IllegalArgumentException exception) {
-            return false;
+    private void skipWhitespaces() {
+        while (Character.isWhitespace(get())) {
+            nextChar();
         }
-        return true;
     }
 
+    /**
+     * Compares the buffer with accepted spellings of the token the same way as {@code Enum.valueOf} of the upper-cased
+     * buffer with '-' replaced by '_' would, without creating the intermediate strings. The matched spelling is kept in
+     * {@link #tokenValue}.
+     */
     private boolean bufferHas(TokenType tokenType) {
-        switch (tokenType.kind) {
-            case LITERAL:
-                return tokenType.literal.equals(sanitize(buffer.toString()));
-            case ENUM:
-                return tokenType.getEnumValues().contains(sanitize(buffer.toString()));
-            case CHAR:
-                throw new IllegalArgumentException("Don't use buffer for character-tokens.");
-            default:
-                throw new IllegalArgumentException("Unknown TokenKind.");
+        if (tokenType.kind == TokenKind.CHAR) {
+            throw new IllegalArgumentException("Don't use buffer for character-tokens.");
+        }
+        for (String value : TOKEN_VALUES[tokenType.ordinal()]) {
+            if (bufferEquals(value)) {
+                tokenValue = value;
+                return true;
+            }
         }
+        return false;
+    }
+
+    private boolean bufferEquals(String sanitized) {
+        int length = buffer.length();
+        if (length != sanitized.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = Character.toUpperCase(buffer.charAt(i));
+            if ((c == '-' ? '_' : c) != sanitized.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private boolean bufferWord() {
         boolean filledBuffer = false;
         skipWhitespaces();
-        while (acceptAndPutIf(ch -> !(Character.isWhitespace(ch) || isSpecial()))) {
+        while (!(Character.isWhitespace(get()) || isSpecial())) {
+            put();
+            nextChar();
             filledBuffer = true;
         }
         return filledBuffer;
     }
 
     private boolean isSpecial() {
-        switch (get()) {
-            case '"':
-            case '\'':
-            case EOL:
-                return true;
-            default:
-                return charKindChars.contains(get()) // TokenKind.CHAR characters
-                        || (enumTokens.contains(TokenType.QVALUE) && get() == ':'); // With QVALUE ':' is considered
-                                                                                    // spec
-        }
+        char c = get();
+        return c < tables.special.length && tables.special[c];
     }
 
     private void put() {
         buffer.append(get());
     }
+
+    private static final class Tables {
+
+        /**
+         * Allowed LITERAL and ENUM tokens.
+         */
+        private final TokenType[] stringKindTypes;
+
+        /**
+         * Characters ending a word: quotes, EOL, allowed CHAR tokens and ':' when QVALUE is allowed.
+         */
+        private final boolean[] special = new boolean[128];
+
+        private final char[] blacklisted;
+
+        private Tables(Set<TokenType> allowedTokens, Set<Character> blacklistedChars) {
+            this.stringKindTypes = allowedTokens.stream()
+                    .filter(tt -> tt.kind == TokenKind.LITERAL || tt.kind == TokenKind.ENUM)
+                    .sorted()
+                    .toArray(TokenType[]::new);
+
+            special['"'] = true;
+            special['\''] = true;
+            special[EOL] = true;
+            for (TokenType type : allowedTokens) {
+                if (type.kind == TokenKind.CHAR) {
+                    special[type.charLiteral] = true;
+                }
+            }
+            if (allowedTokens.contains(TokenType.QVALUE)) {
+                special[':'] = true;
+            }
+
+            this.blacklisted = new char[blacklistedChars.size()];
+            int i = 0;
+            for (Character c : blacklistedChars) {
+                blacklisted[i++] = c;
+            }
+        }
+
+        private boolean isBlacklisted(char c) {
+            for (char b : blacklisted) {
+                if (b == c) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -42,6 +42,14 @@ public class MDCThreadPoolExecutor implements ExecutorService {
     MDCThreadPoolExecutor() {
     }
 
+    /**
+     * Propagates MDC and OpenTelemetry context to the tasks of an existing executor, e.g. a virtual thread per task
+     * executor.
+     */
+    public MDCThreadPoolExecutor(ExecutorService executorService) {
+        this.executorService = Context.taskWrapping(executorService);
+    }
+
     public MDCThreadPoolExecutor(
             int corePoolSize,
             int maximumPoolSize,
@@ -0,0 +1,316 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.jboss.pnc.common.concurrent.NamedThreadFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Authorization supplier caching the credential until shortly before it expires. The credential is refreshed in the
+ * background {@code refreshBefore} its expiry, so requests don't wait for the identity provider, and concurrent
+ * refreshes collapse into a single fetch. Only when there is no valid credential (at start, after it expired or was
+ * {@link #invalidate(String) invalidated}) the callers wait for the fetch.
+ *
+ * Set as {@link PNCHttpClient#setAuthValueSupplier(Supplier)} (or the token supplier), the client also invalidates the
+ * credential and retries the request once when it is rejected with {@code 401 Unauthorized}. Safe to share between
+ * threads.
+ */
+@Slf4j
+public class CachingAuthSupplier implements Supplier<String> {
+
+    public static final Duration DEFAULT_REFRESH_BEFORE = Duration.ofSeconds(30);
+
+    /**
+     * Delay before a failed background refresh is attempted again, the current credential is used meanwhile.
+     */
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ScheduledExecutorService DEFAULT_SCHEDULER = newScheduler();
+
+    private final Supplier<Credential> fetcher;
+    private final Duration refreshBefore;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+
+    private volatile Credential current;
+    private volatile Instant retryNotBefore = Instant.MIN;
+
+    /**
+     * Fetch in flight, guarded by this.
+     */
+    private CompletableFuture<Credential> refreshing;
+
+    /**
+     * Next proactive refresh, guarded by this.
+     */
+    private ScheduledFuture<?> scheduledRefresh;
+
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param fetcher fetches a new credential, called by one thread at a time
+     */
+    public CachingAuthSupplier(Supplier<Credential> fetcher) {
+        this(fetcher, DEFAULT_REFRESH_BEFORE, DEFAULT_SCHEDULER);
+    }
+
+    /**
+     * @param fetcher fetches a new credential, called by one thread at a time
+     * @param refreshBefore how long before the expiry the credential is refreshed
+     * @param scheduler executor running the background refreshes
+     */
+    public CachingAuthSupplier(
+            Supplier<Credential> fetcher,
+            Duration refreshBefore,
+            ScheduledExecutorService scheduler) {
+        this(fetcher, refreshBefore, scheduler, Clock.systemUTC());
+    }
+
+    CachingAuthSupplier(
+            Supplier<Credential> fetcher,
+            Duration refreshBefore,
+            ScheduledExecutorService scheduler,
+            Clock clock) {
+        this.fetcher = fetcher;
+        this.refreshBefore = refreshBefore;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /**
+     * Caches the values of a supplier of JWT access tokens (with or without the {@code Bearer} scheme) until their
+     * {@code exp} claim, see {@link Credential#ofJwt(String)}.
+     */
+    public static CachingAuthSupplier ofJwt(Supplier<String> tokenSupplier) {
+        return new CachingAuthSupplier(() -> Credential.ofJwt(tokenSupplier.get()));
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        ThreadFactory threadFactory = new NamedThreadFactory("pnc-auth-refresh");
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the cached credential, waits for a new one only when there is no valid credential
+     */
+    @Override
+    public String get() {
+        Credential credential = current;
+        Instant now = clock.instant();
+        if (credential != null && now.isBefore(credential.getExpiresAt())) {
+            if (!now.isBefore(refreshAt(credential)) && !now.isBefore(retryNotBefore)) {
+                refresh(true);
+            }
+            return credential.getValue();
+        }
+        return await(refresh(false)).getValue();
+    }
+
+    /**
+     * Drops the credential rejected by the server, unless it was already replaced. The next {@link #get()} waits for a
+     * new one.
+     *
+     * @param rejected the value the server rejected
+     * @return true if the rejected value was the current one
+     */
+    public boolean invalidate(String rejected) {
+        synchronized (this) {
+            if (current == null || !current.getValue().equals(rejected)) {
+                return false;
+            }
+            current = null;
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+                scheduledRefresh = null;
+            }
+        }
+        invalidations.increment();
+        log.debug("Authorization credential rejected, fetching a new one.");
+        return true;
+    }
+
+    /**
+     * @return number of credentials fetched
+     */
+    public long getFetches() {
+        return fetches.sum();
+    }
+
+    /**
+     * @return number of failed fetches
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return number of credentials invalidated because the server rejected them
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private Instant refreshAt(Credential credential) {
+        if (credential.getExpiresAt().equals(Instant.MAX)) {
+            return Instant.MAX;
+        }
+        return credential.getExpiresAt().minus(refreshBefore);
+    }
+
+    /**
+     * Starts a fetch unless one is already in flight.
+     *
+     * @param inBackground whether the fetch runs on the scheduler rather than the calling thread
+     * @return the fetch in flight
+     */
+    private CompletableFuture<Credential> refresh(boolean inBackground) {
+        CompletableFuture<Credential> result;
+        synchronized (this) {
+            if (refreshing != null) {
+                return refreshing;
+            }
+            result = new CompletableFuture<>();
+            refreshing = result;
+        }
+        if (inBackground) {
+            scheduler.execute(() -> fetch(result));
+        } else {
+            fetch(result);
+        }
+        return result;
+    }
+
+    private void fetch(CompletableFuture<Credential> result) {
+        Credential fetched;
+        try {
+            fetched = fetcher.get();
+        } catch (RuntimeException e) {
+            failures.increment();
+            retryNotBefore = clock.instant().plus(RETRY_DELAY);
+            log.warn("Cannot fetch the authorization credential: {}", e.getMessage());
+            synchronized (this) {
+                refreshing = null;
+            }
+            result.completeExceptionally(e);
+            return;
+        }
+
+        fetches.increment();
+        synchronized (this) {
+            current = fetched;
+            refreshing = null;
+            scheduleRefresh(fetched);
+        }
+        result.complete(fetched);
+    }
+
+    /**
+     * Schedules the proactive refresh of the credential, guarded by this.
+     */
+    private void scheduleRefresh(Credential credential) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+        Instant refreshAt = refreshAt(credential);
+        if (refreshAt.equals(Instant.MAX)) {
+            return;
+        }
+        long delay = Math.max(0, Duration.between(clock.instant(), refreshAt).toMillis());
+        scheduledRefresh = scheduler.schedule(() -> refresh(false), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static Credential await(CompletableFuture<Credential> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Authorization header value and the instant it expires at.
+     */
+    @Getter
+    public static class Credential {
+        private final String value;
+        private final Instant expiresAt;
+
+        /**
+         * @param value the {@link org.jboss.pnc.api.constants.HttpHeaders#AUTHORIZATION_STRING} header value, or the
+         *        token when used as the token supplier
+         * @param expiresAt when the credential expires, {@link Instant#MAX} if it doesn't
+         */
+        public Credential(String value, Instant expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Reads the expiry from the {@code exp} claim of a JWT, a token without the claim never expires.
+         *
+         * @param value the token, optionally preceded by the {@code Bearer} scheme
+         * @throws IllegalArgumentException if the value is not a JWT
+         */
+        public static Credential ofJwt(String value) {
+            String token = value.regionMatches(true, 0, "Bearer ", 0, 7) ? value.substring(7).trim() : value;
+            String[] parts = token.split("\\.");
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("The authorization credential is not a JWT.");
+            }
+            try {
+                byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+                JsonNode claims = MAPPER.readTree(new String(payload, StandardCharsets.UTF_8));
+                JsonNode exp = claims.get("exp");
+                return new Credential(value, exp == null ? Instant.MAX : Instant.ofEpochSecond(exp.asLong()));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Cannot read the claims of the JWT.", e);
+            }
+        }
+    }
+}
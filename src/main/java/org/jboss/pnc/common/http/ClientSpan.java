@@ -0,0 +1,154 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import com.redhat.resilience.otel.internal.OTelContextUtil;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import org.jboss.pnc.api.constants.MDCHeaderKeys;
+import org.jboss.pnc.common.log.MDCUtils;
+import org.jboss.pnc.common.otel.OtelUtils;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CLIENT span of a request sent by {@link PNCHttpClient}, covering all its attempts. Every attempt adds an event with
+ * its number, duration and status code or error. The span is a child of the current span, or of the trace in MDC when
+ * there is no current span.
+ */
+class ClientSpan {
+
+    /**
+     * Used when client spans are disabled, does nothing.
+     */
+    static final ClientSpan NONE = new ClientSpan(null);
+
+    private static final AttributeKey<Long> ATTEMPT = AttributeKey.longKey("pnc.http.attempt");
+    private static final AttributeKey<Long> DURATION_MS = AttributeKey.longKey("pnc.http.attempt.duration_ms");
+    private static final AttributeKey<Long> STATUS_CODE = HttpClientMetrics.RESPONSE_STATUS_CODE;
+    private static final AttributeKey<String> ERROR_TYPE = HttpClientMetrics.ERROR_TYPE;
+
+    private final Span span;
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private ClientSpan(Span span) {
+        this.span = span;
+    }
+
+    static ClientSpan start(Tracer tracer, String method, URI uri) {
+        Context parent = Context.current();
+        if (!Span.fromContext(parent).getSpanContext().isValid()) {
+            String traceparent = MDCUtils.getOtelHeadersFromMDC().get(MDCHeaderKeys.TRACEPARENT.getHeaderName());
+            SpanContext mdcContext = traceparent == null ? null
+                    : OTelContextUtil.extractContextFromTraceParent(traceparent);
+            if (mdcContext != null && mdcContext.isValid()) {
+                parent = parent.with(Span.wrap(mdcContext));
+            }
+        }
+
+        Span span = tracer.spanBuilder(method)
+                .setParent(parent)
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute(HttpClientMetrics.REQUEST_METHOD, method)
+                .setAttribute("url.full", uri.toString())
+                .setAttribute(HttpClientMetrics.SERVER_ADDRESS, String.valueOf(uri.getHost()))
+                .startSpan();
+        return new ClientSpan(span);
+    }
+
+    /**
+     * Sets the traceparent and tracestate headers of this span.
+     */
+    void inject(HttpRequest.Builder builder) {
+        if (span == null) {
+            return;
+        }
+        SpanContext context = span.getSpanContext();
+        OtelUtils.createTraceParentHeader(context).forEach(builder::setHeader);
+        OtelUtils.createTraceStateHeader(context).forEach((name, value) -> {
+            if (!value.isEmpty()) {
+                builder.setHeader(name, value);
+            }
+        });
+    }
+
+    /**
+     * @param start {@link System#nanoTime()} when the attempt started
+     */
+    void attemptCompleted(long start, HttpResponse<?> response, Throwable error) {
+        if (span == null) {
+            return;
+        }
+        long attempt = attempts.incrementAndGet();
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+        Attributes attributes = error == null
+                ? Attributes.of(ATTEMPT, attempt, DURATION_MS, durationMs, STATUS_CODE, (long) response.statusCode())
+                : Attributes.of(ATTEMPT, attempt, DURATION_MS, durationMs, ERROR_TYPE, error.getClass().getName());
+        span.addEvent("attempt", attributes);
+    }
+
+    /**
+     * Ends the span with the final outcome of the request.
+     *
+     * @param status final status code, 0 when unknown
+     * @param error error the request failed with, null when it succeeded
+     */
+    void end(int status, Throwable error) {
+        if (span == null) {
+            return;
+        }
+        if (error instanceof PNCHttpClientException && ((PNCHttpClientException) error).getStatus() != null) {
+            status = ((PNCHttpClientException) error).getStatus();
+        }
+        if (status > 0) {
+            span.setAttribute(STATUS_CODE, (long) status);
+        }
+        int resends = attempts.get() - 1;
+        if (resends > 0) {
+            span.setAttribute("http.request.resend_count", resends);
+        }
+        if (error != null) {
+            span.setAttribute(ERROR_TYPE, error.getClass().getName());
+            span.recordException(error);
+            span.setStatus(StatusCode.ERROR, error.getMessage());
+        } else if (status >= 400) {
+            span.setStatus(StatusCode.ERROR);
+        }
+        span.end();
+    }
+
+    /**
+     * Ends the span of a request answered from the cache, without any attempt.
+     */
+    void endFromCache() {
+        if (span == null) {
+            return;
+        }
+        span.addEvent("served from cache");
+        end(200, null);
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrent requests to a host. The limit adapts to the host using AIMD: it grows by one with
+ * every successful request made while the limit was at least half used, and shrinks by the backoff ratio with every
+ * request that failed with I/O error, was rejected as overloaded (429, 503) or took longer than the latency threshold.
+ *
+ * Requests over the limit wait in FIFO order up to the max wait, without holding a thread when acquired
+ * asynchronously, and are rejected after it. Safe to share between threads.
+ */
+public class ConcurrencyLimiter {
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final Duration maxWait;
+
+    private final Deque<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+    private final LongAdder rejections = new LongAdder();
+    private double limit;
+    private int inFlight;
+
+    public ConcurrencyLimiter(String name, PNCHttpClientConfig.ConcurrencyLimitConfig config) {
+        this.name = name;
+        this.minLimit = Math.max(1, config.minLimit());
+        this.maxLimit = Math.max(minLimit, config.maxLimit());
+        this.backoffRatio = config.backoffRatio();
+        this.latencyThresholdNanos = config.latencyThreshold().toNanos();
+        this.maxWait = config.maxWait();
+        this.limit = Math.min(maxLimit, Math.max(minLimit, config.initialLimit()));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return number of requests rejected since the limiter was created
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Waits for a free slot, blocking the calling thread up to the max wait.
+     *
+     * @throws PNCHttpClientException when no slot is freed in time
+     */
+    public Permit acquire() {
+        CompletableFuture<Permit> permit = acquireAsync();
+        try {
+            return permit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!permit.cancel(false)) {
+                // granted in the meantime
+                permit.join().ignore();
+            }
+            throw new PNCHttpClientException("Interrupted while waiting for a request slot to " + name + ".", e);
+        } catch (ExecutionException e) {
+            throw (PNCHttpClientException) e.getCause();
+        }
+    }
+
+    /**
+     * @return future completed with a permit when a slot is free, or completed exceptionally with
+     *         {@link PNCHttpClientException} when no slot is freed within the max wait
+     */
+    public CompletableFuture<Permit> acquireAsync() {
+        CompletableFuture<Permit> permit = new CompletableFuture<>();
+        synchronized (this) {
+            if (inFlight < (int) limit && waiting.isEmpty()) {
+                inFlight++;
+                permit.complete(new Permit());
+                return permit;
+            }
+            if (!maxWait.isZero() && !maxWait.isNegative()) {
+                waiting.addLast(permit);
+            }
+        }
+        if (maxWait.isZero() || maxWait.isNegative()) {
+            reject(permit);
+        } else {
+            CompletableFuture.delayedExecutor(maxWait.toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+                boolean removed;
+                synchronized (this) {
+                    removed = waiting.remove(permit);
+                }
+                if (removed) {
+                    reject(permit);
+                }
+            });
+        }
+        return permit;
+    }
+
+    private void reject(CompletableFuture<Permit> permit) {
+        rejections.increment();
+        permit.completeExceptionally(
+                new PNCHttpClientException("Too many concurrent requests to " + name + " (limit " + getLimit() + ")."));
+    }
+
+    private void release(Outcome outcome, long rttNanos) {
+        List<CompletableFuture<Permit>> granted = new ArrayList<>();
+        synchronized (this) {
+            boolean dropped = outcome == Outcome.DROPPED
+                    || (outcome == Outcome.SUCCESS && rttNanos > latencyThresholdNanos);
+            if (dropped) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (outcome == Outcome.SUCCESS && inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            inFlight--;
+
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                inFlight++;
+                granted.add(waiting.pollFirst());
+            }
+        }
+        // complete outside of the lock, the waiters continue on this thread
+        for (CompletableFuture<Permit> waiter : granted) {
+            Permit permit = new Permit();
+            if (!waiter.complete(permit)) {
+                // cancelled by the waiter
+                permit.ignore();
+            }
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS, DROPPED, IGNORED
+    }
+
+    /**
+     * A slot taken by a request. Exactly one of the methods must be called when the request finishes, later calls are
+     * no-ops.
+     */
+    public class Permit {
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * The request was served, the limit may grow.
+         */
+        public void onSuccess() {
+            release(Outcome.SUCCESS);
+        }
+
+        /**
+         * The request failed in a way that indicates overload, the limit shrinks.
+         */
+        public void onDropped() {
+            release(Outcome.DROPPED);
+        }
+
+        /**
+         * The request didn't reach the host or its outcome says nothing about the load, the limit stays.
+         */
+        public void ignore() {
+            release(Outcome.IGNORED);
+        }
+
+        /**
+         * Reports the outcome of a request by its status code.
+         */
+        void onResponse(int status) {
+            if (status == 429 || status == 503) {
+                onDropped();
+            } else {
+                onSuccess();
+            }
+        }
+
+        /**
+         * Reports a request that didn't get a response.
+         */
+        void onError(Throwable error) {
+            if (error instanceof CancellationException || error instanceof InterruptedException) {
+                ignore();
+            } else {
+                onDropped();
+            }
+        }
+
+        private void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                ConcurrencyLimiter.this.release(outcome, System.nanoTime() - start);
+            }
+        }
+    }
+}
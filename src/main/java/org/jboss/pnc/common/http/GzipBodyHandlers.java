@@ -0,0 +1,143 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Body handlers decoding gzip encoded responses, {@link HttpClient} leaves that to the caller. Responses without
+ * {@code Content-Encoding: gzip} are handled like by the plain JDK handlers.
+ */
+final class GzipBodyHandlers {
+
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    static final String CONTENT_ENCODING = "Content-Encoding";
+
+    static final String GZIP = "gzip";
+
+    private GzipBodyHandlers() {
+    }
+
+    /**
+     * Only the compressed bytes are buffered, they are decoded to the string once the body is received.
+     */
+    static HttpResponse.BodyHandler<String> ofString() {
+        return responseInfo -> {
+            if (!isGzipped(responseInfo)) {
+                return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+            }
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+                if (bytes.length == 0) {
+                    return "";
+                }
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                    return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot decode gzip encoded response body.", e);
+                }
+            });
+        };
+    }
+
+    /**
+     * The body is decoded while the caller reads the stream.
+     */
+    static HttpResponse.BodyHandler<InputStream> ofInputStream() {
+        return responseInfo -> {
+            if (!isGzipped(responseInfo)) {
+                return HttpResponse.BodySubscribers.ofInputStream();
+            }
+            return HttpResponse.BodySubscribers
+                    .mapping(HttpResponse.BodySubscribers.ofInputStream(), LazyGzipInputStream::new);
+        };
+    }
+
+    private static boolean isGzipped(HttpResponse.ResponseInfo responseInfo) {
+        return responseInfo.headers()
+                .firstValue(CONTENT_ENCODING)
+                .map(encoding -> encoding.trim().equalsIgnoreCase(GZIP))
+                .orElse(false);
+    }
+
+    /**
+     * Reads the gzip header on the first read rather than when created, the mapping of the body runs on the client's
+     * threads which must not block waiting for the body.
+     */
+    private static final class LazyGzipInputStream extends FilterInputStream {
+        private boolean started;
+
+        private LazyGzipInputStream(InputStream compressed) {
+            super(compressed);
+        }
+
+        private void start() throws IOException {
+            if (started) {
+                return;
+            }
+            started = true;
+            PushbackInputStream pushback = new PushbackInputStream(in, 1);
+            int first = pushback.read();
+            if (first == -1) {
+                // e.g. HEAD or 304 responses have the encoding header without a body
+                in = pushback;
+                return;
+            }
+            pushback.unread(first);
+            in = new GZIPInputStream(pushback);
+        }
+
+        @Override
+        public int read() throws IOException {
+            start();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            start();
+            return super.read(bytes, offset, length);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            start();
+            return super.skip(count);
+        }
+
+        @Override
+        public int available() throws IOException {
+            // starting would block, nothing is known to be available before
+            return started ? super.available() : 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import dev.failsafe.CircuitBreaker;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.LongUpDownCounter;
+import io.opentelemetry.api.metrics.Meter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * OpenTelemetry metrics of the requests sent by {@link PNCHttpClient} and {@link HttpUtils}. They are optional, a
+ * client without metrics set doesn't record anything. Published instruments:
+ * <ul>
+ * <li>{@code http.client.request.duration} - histogram of durations of single attempts, in seconds, by host, method
+ * and status code (or error type)</li>
+ * <li>{@code http.client.active_requests} - attempts in flight, by host and method</li>
+ * <li>{@code pnc.http.client.request.attempts} - histogram of attempts per request, including retries, by host and
+ * method</li>
+ * <li>{@code pnc.http.client.retries.aborted} and {@code pnc.http.client.retries.exhausted} - requests that failed
+ * because retrying was aborted (e.g. by status) or because retries ran out, by host and method</li>
+ * <li>{@code pnc.http.client.sent} and {@code pnc.http.client.received} - body bytes sent and received, as far as their
+ * length is known upfront, by host and method</li>
+ * </ul>
+ * With {@link #observe(PNCHttpClient)} also the state of the concurrency limiters, circuit breakers, request hedgers
+ * and the response cache of the client.
+ *
+ * Attributes are built once for every host, method and status code and reused, recording a request allocates no
+ * attribute maps.
+ */
+@Slf4j
+public class HttpClientMetrics implements AutoCloseable {
+
+    public static final String INSTRUMENTATION_NAME = "org.jboss.pnc.common.http";
+
+    static final AttributeKey<String> SERVER_ADDRESS = AttributeKey.stringKey("server.address");
+    static final AttributeKey<Long> SERVER_PORT = AttributeKey.longKey("server.port");
+    static final AttributeKey<String> REQUEST_METHOD = AttributeKey.stringKey("http.request.method");
+    static final AttributeKey<Long> RESPONSE_STATUS_CODE = AttributeKey.longKey("http.response.status_code");
+    static final AttributeKey<String> ERROR_TYPE = AttributeKey.stringKey("error.type");
+    static final AttributeKey<String> CACHE_RESULT = AttributeKey.stringKey("pnc.cache.result");
+
+    private static final String[] METHODS = { "GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "OPTIONS", "_OTHER" };
+
+    private static final int MAX_STATUS = 600;
+
+    private final Meter meter;
+    private final DoubleHistogram duration;
+    private final LongUpDownCounter activeRequests;
+    private final LongHistogram attempts;
+    private final LongCounter abortedRetries;
+    private final LongCounter exhaustedRetries;
+    private final LongCounter sentBytes;
+    private final LongCounter receivedBytes;
+
+    private final Map<String, HostAttributes> hosts = new ConcurrentHashMap<>();
+    private final List<AutoCloseable> observers = new CopyOnWriteArrayList<>();
+
+    public HttpClientMetrics(OpenTelemetry openTelemetry) {
+        this(openTelemetry.getMeter(INSTRUMENTATION_NAME));
+    }
+
+    public HttpClientMetrics(Meter meter) {
+        this.meter = meter;
+        this.duration = meter.histogramBuilder("http.client.request.duration")
+                .setDescription("Duration of HTTP request attempts.")
+                .setUnit("s")
+                .build();
+        this.activeRequests = meter.upDownCounterBuilder("http.client.active_requests")
+                .setDescription("Number of HTTP request attempts in flight.")
+                .setUnit("{request}")
+                .build();
+        this.attempts = meter.histogramBuilder("pnc.http.client.request.attempts")
+                .setDescription("Number of attempts per HTTP request, including retries.")
+                .setUnit("{attempt}")
+                .ofLongs()
+                .build();
+        this.abortedRetries = meter.counterBuilder("pnc.http.client.retries.aborted")
+                .setDescription("Number of HTTP requests failed because retrying was aborted.")
+                .setUnit("{request}")
+                .build();
+        this.exhaustedRetries = meter.counterBuilder("pnc.http.client.retries.exhausted")
+                .setDescription("Number of HTTP requests failed because they ran out of retries.")
+                .setUnit("{request}")
+                .build();
+        this.sentBytes = meter.counterBuilder("pnc.http.client.sent")
+                .setDescription("Size of HTTP request bodies sent.")
+                .setUnit("By")
+                .build();
+        this.receivedBytes = meter.counterBuilder("pnc.http.client.received")
+                .setDescription("Size of HTTP response bodies received.")
+                .setUnit("By")
+                .build();
+    }
+
+    /**
+     * Publishes the state of the concurrency limiters, circuit breakers, request hedgers, retry budgets, shared
+     * requests and response cache of the client, read when the metrics are collected. Called by
+     * {@link PNCHttpClient#setMetrics}.
+     *
+     * @return handle that stops publishing the state of the client, so that the client can be garbage collected
+     */
+    public Observation observe(PNCHttpClient client) {
+        List<AutoCloseable> registered = new ArrayList<>();
+        registered.add(
+                meter.gaugeBuilder("pnc.http.client.concurrency.limit")
+                        .setDescription("Current concurrency limit of a host.")
+                        .setUnit("{request}")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> client.getConcurrencyLimiters().forEach((host, limiter) -> {
+                            measurement.record(limiter.getLimit(), hostAttributes(host));
+                        })));
+        registered.add(
+                meter.gaugeBuilder("pnc.http.client.circuit_breaker.state")
+                        .setDescription("State of the circuit breaker of a host: 0 closed, 1 half-open, 2 open.")
+                        .ofLongs()
+                        .buildWithCallback(measurement -> client.getCircuitBreakers().forEach((host, breaker) -> {
+                            measurement.record(stateValue(breaker.getState()), hostAttributes(host));
+                        })));
+        registered.add(
+                meter.counterBuilder("pnc.http.client.hedges")
+                        .setDescription("Number of hedged attempts started.")
+                        .setUnit("{attempt}")
+                        .buildWithCallback(measurement -> client.getHedgers().forEach((host, hedger) -> {
+                            measurement.record(hedger.getHedges(), hostAttributes(host));
+                        })));
+        registered.add(
+                meter.counterBuilder("pnc.http.client.retries.rejected")
+                        .setDescription("Number of retries rejected by the retry budget of a host.")
+                        .setUnit("{retry}")
+                        .buildWithCallback(measurement -> client.getRetryBudgets().forEach((host, budget) -> {
+                            measurement.record(budget.getRejections(), hostAttributes(host));
+                        })));
+        registered.add(
+                meter.counterBuilder("pnc.http.client.requests.shared")
+                        .setDescription("Number of requests that got the response of an identical request in flight.")
+                        .setUnit("{request}")
+                        .buildWithCallback(measurement -> measurement.record(client.getSharedRequests())));
+        observeCache(registered, client::getResponseCache);
+        return register(registered);
+    }
+
+    /**
+     * Publishes the hits, revalidations and misses of a response cache, e.g. the one set to
+     * {@link HttpUtils#setResponseCache}.
+     *
+     * @return handle that stops publishing the state of the cache
+     */
+    public Observation observe(HttpResponseCache cache) {
+        List<AutoCloseable> registered = new ArrayList<>();
+        observeCache(registered, () -> cache);
+        return register(registered);
+    }
+
+    private void observeCache(List<AutoCloseable> registered, Supplier<HttpResponseCache> cache) {
+        Attributes hit = Attributes.of(CACHE_RESULT, "hit");
+        Attributes revalidated = Attributes.of(CACHE_RESULT, "revalidated");
+        Attributes miss = Attributes.of(CACHE_RESULT, "miss");
+        registered.add(
+                meter.counterBuilder("pnc.http.client.cache.requests")
+                        .setDescription("Number of GET requests looked up in the response cache.")
+                        .setUnit("{request}")
+                        .buildWithCallback(measurement -> {
+                            HttpResponseCache current = cache.get();
+                            if (current != null) {
+                                measurement.record(current.getHits(), hit);
+                                measurement.record(current.getRevalidations(), revalidated);
+                                measurement.record(current.getMisses(), miss);
+                            }
+                        }));
+        registered.add(
+                meter.counterBuilder("pnc.http.client.cache.saved")
+                        .setDescription("Size of response bodies served from the response cache.")
+                        .setUnit("By")
+                        .buildWithCallback(measurement -> {
+                            HttpResponseCache current = cache.get();
+                            if (current != null) {
+                                measurement.record(current.getSavedBytes());
+                            }
+                        }));
+    }
+
+    private Observation register(List<AutoCloseable> registered) {
+        observers.addAll(registered);
+        return () -> {
+            // already closed when missing, by close() of the metrics or of the handle
+            if (observers.removeAll(registered)) {
+                closeAll(registered);
+            }
+        };
+    }
+
+    private static long stateValue(CircuitBreaker.State state) {
+        switch (state) {
+            case CLOSED:
+                return 0;
+            case HALF_OPEN:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Stops publishing the observed state, recorded instruments are not affected.
+     */
+    @Override
+    public void close() {
+        List<AutoCloseable> closing = new ArrayList<>(observers);
+        observers.clear();
+        closeAll(closing);
+    }
+
+    private static void closeAll(List<AutoCloseable> closing) {
+        for (AutoCloseable observer : closing) {
+            try {
+                observer.close();
+            } catch (Exception e) {
+                log.debug("Cannot close metrics observer.", e);
+            }
+        }
+    }
+
+    /**
+     * @return start of the attempt, to be passed to {@link #attemptCompleted}
+     */
+    long attemptStarted(URI uri, String method) {
+        activeRequests.add(1, host(uri).method(methodIndex(method)));
+        return System.nanoTime();
+    }
+
+    long attemptStarted(HttpRequest httpRequest) {
+        return attemptStarted(httpRequest.uri(), httpRequest.method());
+    }
+
+    void attemptCompleted(HttpRequest httpRequest, long start, HttpResponse<?> response, Throwable error) {
+        long sent = httpRequest.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+        long received = response == null ? -1 : response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        attemptCompleted(
+                httpRequest.uri(),
+                httpRequest.method(),
+                start,
+                response == null ? 0 : response.statusCode(),
+                error,
+                sent,
+                received);
+    }
+
+    /**
+     * @param status status code of the response, ignored when the attempt failed with an error
+     * @param sent request body bytes, negative when unknown
+     * @param received response body bytes, negative when unknown
+     */
+    void attemptCompleted(URI uri, String method, long start, int status, Throwable error, long sent, long received) {
+        HostAttributes host = host(uri);
+        int methodIndex = methodIndex(method);
+        Attributes methodAttributes = host.method(methodIndex);
+        activeRequests.add(-1, methodAttributes);
+        Attributes outcome = error == null ? host.status(methodIndex, status) : host.error(methodIndex, error);
+        duration.record((System.nanoTime() - start) / 1e9, outcome);
+        if (sent > 0) {
+            sentBytes.add(sent, methodAttributes);
+        }
+        if (received > 0) {
+            receivedBytes.add(received, methodAttributes);
+        }
+    }
+
+    /**
+     * Records a finished request, successful or not.
+     */
+    void requestCompleted(URI uri, String method, int attemptCount) {
+        attempts.record(attemptCount, host(uri).method(methodIndex(method)));
+    }
+
+    void retriesAborted(URI uri, String method) {
+        abortedRetries.add(1, host(uri).method(methodIndex(method)));
+    }
+
+    void retriesExhausted(URI uri, String method) {
+        exhaustedRetries.add(1, host(uri).method(methodIndex(method)));
+    }
+
+    private Attributes hostAttributes(String schemeAndAuthority) {
+        return host(URI.create(schemeAndAuthority)).base;
+    }
+
+    private HostAttributes host(URI uri) {
+        String authority = uri.getRawAuthority() == null ? "" : uri.getRawAuthority();
+        HostAttributes host = hosts.get(authority);
+        if (host == null) {
+            host = hosts.computeIfAbsent(authority, key -> new HostAttributes(uri));
+        }
+        return host;
+    }
+
+    private static int methodIndex(String method) {
+        switch (method) {
+            case "GET":
+                return 0;
+            case "HEAD":
+                return 1;
+            case "POST":
+                return 2;
+            case "PUT":
+                return 3;
+            case "DELETE":
+                return 4;
+            case "PATCH":
+                return 5;
+            case "OPTIONS":
+                return 6;
+            default:
+                return METHODS.length - 1;
+        }
+    }
+
+    /**
+     * Observed state published by {@link #observe}, closing it stops publishing. Closing twice has no effect.
+     */
+    public interface Observation extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Attributes of a host, built lazily and cached. Arrays are filled without locking, racing threads can only build
+     * the same immutable attributes twice.
+     */
+    private static final class HostAttributes {
+        private final Attributes base;
+        private final Attributes[] byMethod = new Attributes[METHODS.length];
+        private final Attributes[][] byStatus = new Attributes[METHODS.length][];
+        private final List<Map<Class<?>, Attributes>> byError = new ArrayList<>(METHODS.length);
+
+        private HostAttributes(URI uri) {
+            int port = uri.getPort();
+            if (port == -1) {
+                port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            }
+            this.base = Attributes.of(SERVER_ADDRESS, String.valueOf(uri.getHost()), SERVER_PORT, (long) port);
+            for (int i = 0; i < METHODS.length; i++) {
+                byMethod[i] = base.toBuilder().put(REQUEST_METHOD, METHODS[i]).build();
+                byError.add(new ConcurrentHashMap<>());
+            }
+        }
+
+        private Attributes method(int methodIndex) {
+            return byMethod[methodIndex];
+        }
+
+        private Attributes status(int methodIndex, int status) {
+            if (status < 0 || status >= MAX_STATUS) {
+                return withStatus(methodIndex, status);
+            }
+            Attributes[] row = byStatus[methodIndex];
+            if (row == null) {
+                row = new Attributes[MAX_STATUS];
+                byStatus[methodIndex] = row;
+            }
+            Attributes attributes = row[status];
+            if (attributes == null) {
+                attributes = withStatus(methodIndex, status);
+                row[status] = attributes;
+            }
+            return attributes;
+        }
+
+        private Attributes withStatus(int methodIndex, int status) {
+            return byMethod[methodIndex].toBuilder().put(RESPONSE_STATUS_CODE, (long) status).build();
+        }
+
+        private Attributes error(int methodIndex, Throwable error) {
+            Throwable cause = error instanceof PNCHttpClientException && error.getCause() != null ? error.getCause()
+                    : error;
+            return byError.get(methodIndex)
+                    .computeIfAbsent(
+                            cause.getClass(),
+                            type -> byMethod[methodIndex].toBuilder().put(ERROR_TYPE, type.getName()).build());
+        }
+    }
+}
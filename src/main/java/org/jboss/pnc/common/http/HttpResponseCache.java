@@ -0,0 +1,346 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of successful GET responses, shared by {@link PNCHttpClient} and {@link HttpUtils} when set. Follows
+ * the freshness rules of a private cache: a response is served without a request while it is fresh according to
+ * {@code Cache-Control: max-age} or {@code Expires}, afterwards it is revalidated with {@code If-None-Match} /
+ * {@code If-Modified-Since} and a {@code 304 Not Modified} response is served from the cache. Responses with
+ * {@code Cache-Control: no-store}, or neither freshness nor a validator, are not stored.
+ *
+ * Responses are keyed by URI and the {@code Authorization} and {@code Accept} header values. Responses that declare
+ * {@code Vary} on any other request header are not stored, the key could not tell their representations apart. The
+ * cache holds bodies up to the max size in bytes, least recently used entries are evicted first. Safe to share between
+ * threads.
+ */
+public class HttpResponseCache {
+
+    /**
+     * Request headers the key is made of, {@code Vary} may name only these. Bodies are stored decoded, so varying on
+     * {@code Accept-Encoding} doesn't matter.
+     */
+    private static final Set<String> KEY_HEADERS = Set.of("authorization", "accept", "accept-encoding");
+
+    private final long maxBytes;
+    private final Clock clock;
+
+    /**
+     * Entries in access order, guarded by itself.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * @param maxBytes max size of all cached bodies (in UTF-8 bytes) together
+     */
+    public HttpResponseCache(long maxBytes) {
+        this(maxBytes, Clock.systemUTC());
+    }
+
+    HttpResponseCache(long maxBytes, Clock clock) {
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    public static String key(URI uri, String authorization, String accept) {
+        return uri + "\n" + (accept == null ? "" : accept) + "\n" + (authorization == null ? "" : authorization);
+    }
+
+    /**
+     * @return cached response, fresh or not, or null
+     */
+    public Entry get(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Records that a fresh entry was served without a request.
+     */
+    public void recordHit(Entry entry) {
+        hits.increment();
+        savedBytes.add(entry.size);
+    }
+
+    /**
+     * Records a {@code 304 Not Modified} response to revalidation of the entry and refreshes it with the headers of the
+     * response.
+     *
+     * @return the refreshed entry to be served
+     */
+    public Entry recordNotModified(String key, Entry entry, Map<String, List<String>> headers) {
+        revalidations.increment();
+        savedBytes.add(entry.size);
+
+        Map<String, List<String>> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(entry.headers);
+        merged.putAll(headers);
+        Entry refreshed = newEntry(entry.body, merged);
+        store(key, refreshed == null ? entry : refreshed);
+        return refreshed == null ? entry : refreshed;
+    }
+
+    /**
+     * Records a full successful response and stores it when it is cacheable.
+     */
+    public void recordMiss(String key, String body, Map<String, List<String>> headers) {
+        misses.increment();
+        Map<String, List<String>> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        sorted.putAll(headers);
+        Entry entry = newEntry(body, sorted);
+        if (entry == null) {
+            remove(key);
+        } else {
+            store(key, entry);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return sum of sizes of the bodies served from the cache, fresh or revalidated, instead of being transferred
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    /**
+     * @return ratio of responses served from the cache (fresh or revalidated) to all responses, 0 when there were none
+     */
+    public double getHitRatio() {
+        long served = hits.sum() + revalidations.sum();
+        long total = served + misses.sum();
+        return total == 0 ? 0 : (double) served / total;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void store(String key, Entry entry) {
+        if (entry.size > maxBytes) {
+            remove(key);
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+            bytes += entry.size;
+
+            Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= leastRecentlyUsed.next().size;
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+        }
+    }
+
+    private Entry newEntry(String body, Map<String, List<String>> headers) {
+        Map<String, String> cacheControl = cacheControl(headers);
+        if (cacheControl.containsKey("no-store") || !varyCovered(headers)) {
+            return null;
+        }
+
+        Instant now = clock.instant();
+        Instant expires = now;
+        if (!cacheControl.containsKey("no-cache")) {
+            Long maxAge = seconds(cacheControl.get("max-age"));
+            if (maxAge != null) {
+                Long age = seconds(first(headers, "Age").orElse(null));
+                expires = now.plusSeconds(maxAge - (age == null ? 0 : age));
+            } else {
+                // invalid Expires (such as "0") means already expired
+                Instant expiresHeader = date(first(headers, "Expires").orElse(null));
+                Instant date = date(first(headers, "Date").orElse(null));
+                if (expiresHeader != null) {
+                    expires = now.plus(Duration.between(date == null ? now : date, expiresHeader));
+                }
+            }
+        }
+
+        Optional<String> etag = first(headers, "ETag");
+        Optional<String> lastModified = first(headers, "Last-Modified");
+        if (!expires.isAfter(now) && etag.isEmpty() && lastModified.isEmpty()) {
+            // would never be served
+            return null;
+        }
+        return new Entry(body, Collections.unmodifiableMap(headers), etag, lastModified, expires, utf8Length(body));
+    }
+
+    private static Map<String, String> cacheControl(Map<String, List<String>> headers) {
+        Map<String, String> directives = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String header : headers.getOrDefault("Cache-Control", List.of())) {
+            for (String directive : header.split(",")) {
+                String[] nameValue = directive.trim().split("=", 2);
+                if (!nameValue[0].isEmpty()) {
+                    directives.put(nameValue[0], nameValue.length > 1 ? nameValue[1].replace("\"", "") : "");
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static boolean varyCovered(Map<String, List<String>> headers) {
+        for (String header : headers.getOrDefault("Vary", List.of())) {
+            for (String name : header.split(",")) {
+                String trimmed = name.trim().toLowerCase(Locale.ROOT);
+                if (!trimmed.isEmpty() && !KEY_HEADERS.contains(trimmed)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static Optional<String> first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? Optional.empty() : Optional.of(values.get(0));
+    }
+
+    private static Long seconds(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Instant date(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static long utf8Length(String string) {
+        long length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * A cached response body with its headers.
+     */
+    @Getter
+    public class Entry {
+        private final String body;
+        private final Map<String, List<String>> headers;
+        private final Optional<String> etag;
+        private final Optional<String> lastModified;
+        private final Instant expires;
+        private final long size;
+
+        private Entry(
+                String body,
+                Map<String, List<String>> headers,
+                Optional<String> etag,
+                Optional<String> lastModified,
+                Instant expires,
+                long size) {
+            this.body = body;
+            this.headers = headers;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+            this.size = size;
+        }
+
+        public boolean isFresh() {
+            return expires.isAfter(clock.instant());
+        }
+
+        /**
+         * @return headers making the request conditional on the cached response being modified
+         */
+        public Map<String, String> getValidators() {
+            Map<String, String> validators = new LinkedHashMap<>();
+            etag.ifPresent(value -> validators.put("If-None-Match", value));
+            lastModified.ifPresent(value -> validators.put("If-Modified-Since", value));
+            return validators;
+        }
+    }
+}
@@ -3,16 +3,25 @@ package org.jboss.pnc.common.http;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.util.EntityUtils;
 import org.jboss.pnc.api.dto.Request;
 
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
@@ -31,12 +40,142 @@ import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class HttpUtils {
     private static final ObjectMapper objectMapper = Json.newObjectMapper();
 
+    static final HttpUtilsConfig DEFAULT_CONFIG = new HttpUtilsConfig() {
+        @Override
+        public int maxConnections() {
+            return 200;
+        }
+
+        @Override
+        public int maxConnectionsPerRoute() {
+            return 20;
+        }
+
+        @Override
+        public Duration idleTimeout() {
+            return Duration.ofSeconds(30);
+        }
+
+        @Override
+        public Duration validateAfterInactivity() {
+            return Duration.ofSeconds(2);
+        }
+
+        @Override
+        public int retries() {
+            return 3;
+        }
+
+        @Override
+        public boolean compressRequests() {
+            return false;
+        }
+
+        @Override
+        public int compressionThreshold() {
+            return 8192;
+        }
+    };
+
+    private static volatile HttpUtilsConfig config = DEFAULT_CONFIG;
+
+    private static volatile SSLConnectionSocketFactory permissiveSocketFactory;
+
+    private static volatile CloseableHttpClient sharedHttpClient;
+
+    private static volatile HttpResponseCache responseCache;
+
+    private static volatile HttpClientMetrics metrics;
+
+    /**
+     * Sets cache of responses to {@link #performHttpGetRequest(URI, Optional)}, null (default) disables caching.
+     */
+    public static void setResponseCache(HttpResponseCache cache) {
+        responseCache = cache;
+    }
+
+    /**
+     * Sets OpenTelemetry metrics recording the requests sent by the static request methods, null (default) disables
+     * metrics. See {@link HttpClientMetrics#observe(HttpResponseCache)} to publish the state of the response cache too.
+     */
+    public static void setMetrics(HttpClientMetrics httpClientMetrics) {
+        metrics = httpClientMetrics;
+    }
+
+    /**
+     * Replaces the shared client used by the static request methods with one pooling connections according to the
+     * config. Meant to be called once at startup, the previous client is closed together with its connections.
+     */
+    public static void configure(HttpUtilsConfig config) {
+        CloseableHttpClient previous;
+        synchronized (HttpUtils.class) {
+            previous = sharedHttpClient;
+            sharedHttpClient = newPooledHttpClient(config);
+            HttpUtils.config = config;
+        }
+        if (previous != null) {
+            try {
+                previous.close();
+            } catch (IOException e) {
+                log.warn("Error closing the previous shared HTTP client.", e);
+            }
+        }
+    }
+
+    /**
+     * Shared "permissive" client ignoring invalid SSL certificates. Connections are kept alive and pooled across
+     * requests, so the client must NOT be closed by the caller; close the responses instead, after consuming their
+     * entity, to return the connection to the pool.
+     *
+     * @return the shared client, created with default config if {@link #configure} wasn't called
+     */
+    public static CloseableHttpClient getSharedHttpClient() {
+        CloseableHttpClient client = sharedHttpClient;
+        if (client == null) {
+            synchronized (HttpUtils.class) {
+                if (sharedHttpClient == null) {
+                    sharedHttpClient = newPooledHttpClient(DEFAULT_CONFIG);
+                }
+                client = sharedHttpClient;
+            }
+        }
+        return client;
+    }
+
+    private static CloseableHttpClient newPooledHttpClient(HttpUtilsConfig config) {
+        SSLConnectionSocketFactory sslSocketFactory = getPermissiveSocketFactory();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory> create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register(
+                                "https",
+                                sslSocketFactory != null ? sslSocketFactory
+                                        : SSLConnectionSocketFactory.getSocketFactory())
+                        .build());
+        connectionManager.setMaxTotal(config.maxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.maxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity((int) config.validateAfterInactivity().toMillis());
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(config.retries(), false))
+                .evictExpiredConnections()
+                .evictIdleConnections(config.idleTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     public static String performHttpGetRequest(String uri, Optional<String> authHttpValue) {
         return performHttpGetRequest(URI.create(uri), authHttpValue);
     }
@@ -48,20 +187,45 @@ public class HttpUtils {
         request.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
         authHttpValue.ifPresent(s -> request.setHeader(HttpHeaders.AUTHORIZATION, s));
 
-        return performHttpGetRequest(uri, request);
+        return performHttpGetRequest(uri, request, authHttpValue.orElse(null));
     }
 
-    private static String performHttpGetRequest(URI uri, HttpUriRequest httpRequest) {
-        try (CloseableHttpClient httpClient = HttpUtils.getPermissiveHttpClient();
-                CloseableHttpResponse response = httpClient.execute(httpRequest)) {
+    private static String performHttpGetRequest(URI uri, HttpUriRequest httpRequest, String authHttpValue) {
+        HttpResponseCache cache = responseCache;
+        String cacheKey = null;
+        HttpResponseCache.Entry cached = null;
+        if (cache != null) {
+            Header accept = httpRequest.getFirstHeader(HttpHeaders.ACCEPT);
+            cacheKey = HttpResponseCache.key(uri, authHttpValue, accept == null ? null : accept.getValue());
+            cached = cache.get(cacheKey);
+            if (cached != null && cached.isFresh()) {
+                log.debug("Serving response to {} from cache.", uri);
+                cache.recordHit(cached);
+                return cached.getBody();
+            }
+            if (cached != null) {
+                cached.getValidators().forEach(httpRequest::setHeader);
+            }
+        }
+
+        try (CloseableHttpResponse response = execute(uri, httpRequest)) {
 
             int status = response.getStatusLine().getStatusCode();
+            if (cached != null && status == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(response.getEntity());
+                log.debug("Response to {} not modified, serving it from cache.", uri);
+                return cache.recordNotModified(cacheKey, cached, headers(response)).getBody();
+            }
+
             String body = response.getEntity() != null
                     ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8)
                     : "";
 
             if (isSuccess(status)) {
                 log.debug("HTTP {} request to {} succeeded. Status: {}", httpRequest.getMethod(), uri, status);
+                if (cache != null) {
+                    cache.recordMiss(cacheKey, body, headers(response));
+                }
                 return body;
             }
 
@@ -82,11 +246,53 @@ public class HttpUtils {
         }
     }
 
+    /**
+     * Executes the request with the shared client, recording it when metrics are enabled.
+     */
+    private static CloseableHttpResponse execute(URI uri, HttpUriRequest httpRequest) throws IOException {
+        HttpClientMetrics currentMetrics = metrics;
+        if (currentMetrics == null) {
+            return getSharedHttpClient().execute(httpRequest);
+        }
+
+        String method = httpRequest.getMethod();
+        long sent = httpRequest instanceof HttpEntityEnclosingRequest
+                && ((HttpEntityEnclosingRequest) httpRequest).getEntity() != null
+                        ? ((HttpEntityEnclosingRequest) httpRequest).getEntity().getContentLength()
+                        : 0;
+        long start = currentMetrics.attemptStarted(uri, method);
+        try {
+            CloseableHttpResponse response = getSharedHttpClient().execute(httpRequest);
+            HttpEntity entity = response.getEntity();
+            currentMetrics.attemptCompleted(
+                    uri,
+                    method,
+                    start,
+                    response.getStatusLine().getStatusCode(),
+                    null,
+                    sent,
+                    entity == null ? 0 : entity.getContentLength());
+            return response;
+        } catch (IOException | RuntimeException e) {
+            currentMetrics.attemptCompleted(uri, method, start, 0, e, sent, -1);
+            throw e;
+        } finally {
+            // the client retries I/O errors on its own, it counts as one attempt
+            currentMetrics.requestCompleted(uri, method, 1);
+        }
+    }
+
+    private static Map<String, List<String>> headers(HttpResponse response) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Header header : response.getAllHeaders()) {
+            headers.computeIfAbsent(header.getName(), name -> new ArrayList<>()).add(header.getValue());
+        }
+        return headers;
+    }
+
     public static void performHttpPostRequest(String uri, String jsonPayload, String authHttpValue)
             throws JsonProcessingException {
-        StringEntity entity = new StringEntity(jsonPayload, "UTF-8");
-        entity.setContentType(MediaType.APPLICATION_JSON);
-        performHttpPostRequest(uri, entity, Optional.ofNullable(authHttpValue));
+        performHttpPostRequest(uri, jsonEntity(jsonPayload), Optional.ofNullable(authHttpValue));
     }
 
     public static void performHttpPostRequest(String uri, HttpEntity payload, Optional<String> authHttpValue) {
@@ -119,9 +325,7 @@ public class HttpUtils {
         }
         if (payload != null) {
             try {
-                StringEntity entity = new StringEntity(objectMapper.writeValueAsString(payload), "UTF-8");
-                entity.setContentType(MediaType.APPLICATION_JSON);
-                httpRequest.setEntity(entity);
+                httpRequest.setEntity(jsonEntity(objectMapper.writeValueAsString(payload)));
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Cannot map payload to JSON", e);
             }
@@ -131,26 +335,40 @@ public class HttpUtils {
         performHttpRequest(uri, payload, httpRequest);
     }
 
+    /**
+     * @return JSON entity, gzip compressed when configured so and the JSON is large enough
+     */
+    private static HttpEntity jsonEntity(String json) {
+        StringEntity entity = new StringEntity(json, StandardCharsets.UTF_8);
+        entity.setContentType(MediaType.APPLICATION_JSON);
+        HttpUtilsConfig currentConfig = config;
+        if (currentConfig.compressRequests() && entity.getContentLength() >= currentConfig.compressionThreshold()) {
+            // compressed while it is written to the connection
+            return new GzipCompressingEntity(entity);
+        }
+        return entity;
+    }
+
     private static void performHttpRequest(URI uri, Object payload, HttpUriRequest httpRequest) {
-        try (CloseableHttpClient httpClient = HttpUtils.getPermissiveHttpClient()) {
-            try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
-                if (isSuccess(response.getStatusLine().getStatusCode())) {
-                    log.debug(
-                            "HTTP {} request to {} with payload {} sent successfully. Response code: {}",
-                            httpRequest.getMethod(),
-                            uri,
-                            payload,
-                            response.getStatusLine().getStatusCode());
-                } else {
-                    log.error(
-                            "Sending HTTP {} request to {} with payload {} failed! " + "Response code: {}, Message: {}",
-                            httpRequest.getMethod(),
-                            uri,
-                            payload,
-                            response.getStatusLine().getStatusCode(),
-                            response.getEntity().getContent());
-                }
+        try (CloseableHttpResponse response = execute(uri, httpRequest)) {
+            if (isSuccess(response.getStatusLine().getStatusCode())) {
+                log.debug(
+                        "HTTP {} request to {} with payload {} sent successfully. Response code: {}",
+                        httpRequest.getMethod(),
+                        uri,
+                        payload,
+                        response.getStatusLine().getStatusCode());
+            } else {
+                log.error(
+                        "Sending HTTP {} request to {} with payload {} failed! " + "Response code: {}, Message: {}",
+                        httpRequest.getMethod(),
+                        uri,
+                        payload,
+                        response.getStatusLine().getStatusCode(),
+                        response.getEntity().getContent());
             }
+            // fully read response lets the connection be reused
+            EntityUtils.consume(response.getEntity());
         } catch (IOException e) {
             log.error("Error occurred executing the HTTP post request!", e);
         }
@@ -164,6 +382,30 @@ public class HttpUtils {
      * @return Closeable "permissive" HttpClient instance, ignoring invalid SSL certificates.
      */
     public static CloseableHttpClient getPermissiveHttpClient(int retries) {
+        return HttpClients.custom()
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(retries, false))
+                .setSSLSocketFactory(getPermissiveSocketFactory())
+                .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                .build();
+    }
+
+    /**
+     * The SSL context trusting all certificates is built once, it is immutable and thread-safe.
+     */
+    private static SSLConnectionSocketFactory getPermissiveSocketFactory() {
+        SSLConnectionSocketFactory factory = permissiveSocketFactory;
+        if (factory == null) {
+            synchronized (HttpUtils.class) {
+                if (permissiveSocketFactory == null) {
+                    permissiveSocketFactory = newPermissiveSocketFactory();
+                }
+                factory = permissiveSocketFactory;
+            }
+        }
+        return factory;
+    }
+
+    private static SSLConnectionSocketFactory newPermissiveSocketFactory() {
         SSLContextBuilder builder = new SSLContextBuilder();
         try {
             builder.loadTrustMaterial(null, (chain, authType) -> true);
@@ -177,12 +419,7 @@ public class HttpUtils {
         } catch (KeyManagementException | NoSuchAlgorithmException e1) {
             log.error("Error creating SSL Connection Factory.", e1);
         }
-
-        return HttpClients.custom()
-                .setRetryHandler(new DefaultHttpRequestRetryHandler(retries, false))
-                .setSSLSocketFactory(sslSF)
-                .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-                .build();
+        return sslSF;
     }
 
     /**
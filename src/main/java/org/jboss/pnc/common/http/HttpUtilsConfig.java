@@ -0,0 +1,72 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the shared connection pool used by {@link HttpUtils}, see {@link HttpUtils#configure}.
+ */
+public interface HttpUtilsConfig {
+
+    /**
+     * Max number of pooled connections to all hosts together. Defaults to 200.
+     */
+    @WithDefault("200")
+    int maxConnections();
+
+    /**
+     * Max number of pooled connections to a single host (route). Defaults to 20.
+     */
+    @WithDefault("20")
+    int maxConnectionsPerRoute();
+
+    /**
+     * Pooled connections idle for longer than this are closed by a background thread. Defaults to 30 seconds.
+     */
+    @WithDefault("PT30s")
+    Duration idleTimeout();
+
+    /**
+     * A pooled connection idle for longer than this is checked to still be open before it is reused. Defaults to 2
+     * seconds.
+     */
+    @WithDefault("PT2s")
+    Duration validateAfterInactivity();
+
+    /**
+     * The number of retries of requests failed with I/O error. Defaults to 3.
+     */
+    @WithDefault("3")
+    int retries();
+
+    /**
+     * If enabled, JSON request bodies of at least {@link #compressionThreshold()} bytes are sent gzip encoded. The
+     * server must accept {@code Content-Encoding: gzip}. Responses are decoded regardless. Defaults to false.
+     */
+    @WithDefault("false")
+    boolean compressRequests();
+
+    /**
+     * Request bodies smaller than this many bytes are sent as they are. Defaults to 8192.
+     */
+    @WithDefault("8192")
+    int compressionThreshold();
+}
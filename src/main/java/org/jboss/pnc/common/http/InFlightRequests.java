@@ -0,0 +1,228 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.jboss.pnc.api.constants.MDCHeaderKeys;
+
+import java.net.http.HttpRequest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Lets identical concurrent requests share one exchange: the first caller sends the request and the callers asking for
+ * the same while it is in flight wait for its result instead of sending their own. Requests are identical when they
+ * have the same method, URI and headers, except the trace and MDC headers that differ per caller; so requests with
+ * different {@code Authorization} never share a response. Meant for idempotent requests only. Safe to share between
+ * threads.
+ *
+ * A caller cancelling its future stops waiting, the shared exchange goes on for the others. When the last waiting
+ * caller cancels, the exchange is cancelled too. Callers of the blocking {@link #execute} can't cancel, the exchange
+ * always goes on while one of them waits for it.
+ *
+ * @param <T> type of the shared result
+ */
+class InFlightRequests<T> {
+
+    private static final Set<String> PER_CALLER_HEADERS = Arrays.stream(MDCHeaderKeys.values())
+            .map(key -> key.getHeaderName().toLowerCase(Locale.ROOT))
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final Map<String, Flight<T>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * @return key of the request, equal for requests that get the same response
+     */
+    static String key(HttpRequest httpRequest) {
+        Map<String, List<String>> headers = new TreeMap<>();
+        httpRequest.headers().map().forEach((name, values) -> {
+            String lowerCase = name.toLowerCase(Locale.ROOT);
+            if (!PER_CALLER_HEADERS.contains(lowerCase)) {
+                headers.put(lowerCase, values);
+            }
+        });
+        return httpRequest.method() + " " + httpRequest.uri() + " " + headers;
+    }
+
+    /**
+     * @return number of requests that got the result of another request in flight
+     */
+    long getShared() {
+        return shared.sum();
+    }
+
+    /**
+     * Sends the request on the calling thread, or waits for the identical request in flight.
+     *
+     * @param onShared called with the result when it came from another request
+     */
+    T execute(String key, Supplier<T> send, BiConsumer<T, Throwable> onShared) {
+        Flight<T> flight = new Flight<>();
+        Flight<T> existing = join(key, flight);
+        if (existing != null) {
+            shared.increment();
+            try {
+                T value = existing.result.join();
+                onShared.accept(value, null);
+                return value;
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                onShared.accept(null, cause);
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            T value = send.get();
+            inFlight.remove(key, flight);
+            flight.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request asynchronously, or joins the identical request in flight. Cancelling the returned future
+     * cancels the future returned by {@code send} when no other caller waits for it.
+     *
+     * @param onShared called with the result when it came from another request
+     */
+    CompletableFuture<T> executeAsync(
+            String key,
+            Supplier<CompletableFuture<T>> send,
+            BiConsumer<T, Throwable> onShared) {
+        Flight<T> flight = new Flight<>();
+        Flight<T> existing = join(key, flight);
+        if (existing != null) {
+            shared.increment();
+            existing.result.whenComplete(onShared);
+            return waiter(key, existing);
+        }
+
+        CompletableFuture<T> sent;
+        try {
+            sent = send.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        flight.setSent(sent);
+        sent.whenComplete((value, error) -> {
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.result.completeExceptionally(error);
+            } else {
+                flight.result.complete(value);
+            }
+        });
+        return waiter(key, flight);
+    }
+
+    /**
+     * Registers {@code flight} as the request in flight, or joins the identical one as another waiter.
+     *
+     * @return the joined request, or null when {@code flight} is the request in flight now
+     */
+    private Flight<T> join(String key, Flight<T> flight) {
+        while (true) {
+            Flight<T> existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null || existing.join()) {
+                return existing;
+            }
+            // cancelled by its last waiter, not removed yet
+            inFlight.remove(key, existing);
+        }
+    }
+
+    /**
+     * @return future completed the same way as the flight, cancelling it leaves the flight
+     */
+    private CompletableFuture<T> waiter(String key, Flight<T> flight) {
+        CompletableFuture<T> waiter = new CompletableFuture<>();
+        flight.result.whenComplete((value, error) -> {
+            if (error != null) {
+                waiter.completeExceptionally(error);
+            } else {
+                waiter.complete(value);
+            }
+        });
+        waiter.whenComplete((value, error) -> {
+            if (waiter.isCancelled()) {
+                CompletableFuture<T> abandoned = flight.leave();
+                if (abandoned != null) {
+                    inFlight.remove(key, flight);
+                    abandoned.cancel(true);
+                }
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * A request in flight with the number of callers waiting for it, including the one that sent it.
+     */
+    private static final class Flight<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private CompletableFuture<T> sent;
+        private int waiters = 1;
+        private boolean cancelled;
+
+        private synchronized void setSent(CompletableFuture<T> sent) {
+            this.sent = sent;
+        }
+
+        /**
+         * @return false when the request was already cancelled by its last waiter
+         */
+        private synchronized boolean join() {
+            if (cancelled) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * @return the sent future to be cancelled when the last waiter left, null otherwise
+         */
+        private synchronized CompletableFuture<T> leave() {
+            waiters--;
+            if (waiters > 0 || sent == null) {
+                return null;
+            }
+            cancelled = true;
+            return sent;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Request body with a payload serialized to JSON. The payload is written by the Jackson generator straight to UTF-8
+ * bytes, without an intermediate {@link String} and without copying into one large array. Serialization happens once,
+ * every subscription (e.g. a retry of the request) replays the same bytes.
+ *
+ * Payloads over a threshold can be gzip compressed while they are serialized, only the compressed bytes are kept.
+ */
+final class JsonBodyPublisher implements HttpRequest.BodyPublisher {
+
+    private static final int FIRST_CHUNK_SIZE = 4 * 1024;
+
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+    private final long length;
+
+    private final boolean gzipped;
+
+    private final HttpRequest.BodyPublisher chunks;
+
+    private JsonBodyPublisher(List<byte[]> chunks, long length, boolean gzipped) {
+        this.length = length;
+        this.gzipped = gzipped;
+        this.chunks = HttpRequest.BodyPublishers.ofByteArrays(chunks);
+    }
+
+    static JsonBodyPublisher of(ObjectMapper objectMapper, Object payload) throws IOException {
+        ChunkedOutputStream out = new ChunkedOutputStream();
+        objectMapper.writeValue(out, payload);
+        return new JsonBodyPublisher(out.chunks(), out.length, false);
+    }
+
+    /**
+     * Serializes the payload, gzip compressing it if it has at least the threshold bytes.
+     */
+    static JsonBodyPublisher of(ObjectMapper objectMapper, Object payload, int gzipThreshold) throws IOException {
+        GzipAboveThresholdOutputStream out = new GzipAboveThresholdOutputStream(gzipThreshold);
+        objectMapper.writeValue(out, payload);
+        out.close();
+        return new JsonBodyPublisher(out.target().chunks(), out.target().length, out.isGzipped());
+    }
+
+    /**
+     * @return true when the body is gzip encoded, the request must have {@code Content-Encoding: gzip}
+     */
+    boolean isGzipped() {
+        return gzipped;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        chunks.subscribe(subscriber);
+    }
+
+    /**
+     * Collects the bytes in chunks growing up to {@link #MAX_CHUNK_SIZE}, full chunks are never copied.
+     */
+    private static final class ChunkedOutputStream extends OutputStream {
+        private final List<byte[]> full = new ArrayList<>();
+        private byte[] current = new byte[FIRST_CHUNK_SIZE];
+        private int position;
+        private long length;
+
+        @Override
+        public void write(int b) {
+            if (position == current.length) {
+                nextChunk();
+            }
+            current[position++] = (byte) b;
+            length++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) {
+            int written = 0;
+            while (written < count) {
+                if (position == current.length) {
+                    nextChunk();
+                }
+                int toWrite = Math.min(count - written, current.length - position);
+                System.arraycopy(bytes, offset + written, current, position, toWrite);
+                position += toWrite;
+                written += toWrite;
+            }
+            length += count;
+        }
+
+        private void nextChunk() {
+            full.add(current);
+            current = new byte[Math.min(current.length * 2, MAX_CHUNK_SIZE)];
+            position = 0;
+        }
+
+        private List<byte[]> chunks() {
+            List<byte[]> chunks = new ArrayList<>(full);
+            if (position > 0) {
+                chunks.add(Arrays.copyOf(current, position));
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * Collects the bytes as they are until there is more of them than the threshold, then compresses what was
+     * collected and everything written after.
+     */
+    private static final class GzipAboveThresholdOutputStream extends OutputStream {
+        private final int threshold;
+        private ChunkedOutputStream plain = new ChunkedOutputStream();
+        private ChunkedOutputStream compressed;
+        private GZIPOutputStream gzip;
+        private boolean closed;
+
+        private GzipAboveThresholdOutputStream(int threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            if (gzip == null && plain.length + count >= threshold) {
+                startGzip();
+            }
+            if (gzip != null) {
+                gzip.write(bytes, offset, count);
+            } else {
+                plain.write(bytes, offset, count);
+            }
+        }
+
+        private void startGzip() throws IOException {
+            compressed = new ChunkedOutputStream();
+            gzip = new GZIPOutputStream(compressed, FIRST_CHUNK_SIZE);
+            for (byte[] chunk : plain.chunks()) {
+                gzip.write(chunk);
+            }
+            plain = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (gzip != null) {
+                gzip.finish();
+            }
+        }
+
+        private boolean isGzipped() {
+            return gzip != null;
+        }
+
+        private ChunkedOutputStream target() {
+            return gzip != null ? compressed : plain;
+        }
+    }
+}
@@ -17,37 +17,110 @@
  */
 package org.jboss.pnc.common.http;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.failsafe.CircuitBreaker;
+import dev.failsafe.CircuitBreakerOpenException;
+import dev.failsafe.ExecutionContext;
 import dev.failsafe.Failsafe;
+import dev.failsafe.FailsafeExecutor;
 import dev.failsafe.RetryPolicy;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Tracer;
+import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.jboss.pnc.api.dto.Request;
 import org.jboss.pnc.common.Json;
+import org.jboss.pnc.common.concurrent.NamedThreadFactory;
+import org.jboss.pnc.common.concurrent.mdc.MDCExecutors;
+import org.jboss.pnc.common.concurrent.mdc.MDCScheduledThreadPoolExecutor;
+import org.jboss.pnc.common.concurrent.mdc.MDCThreadPoolExecutor;
+import org.jboss.pnc.common.log.MDCUtils;
 
 import javax.ws.rs.core.MediaType;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import static javax.ws.rs.core.HttpHeaders.ACCEPT;
 import static org.jboss.pnc.api.constants.HttpHeaders.AUTHORIZATION_STRING;
 import static org.jboss.pnc.api.constants.HttpHeaders.CONTENT_TYPE_STRING;
+import static org.jboss.pnc.common.http.GzipBodyHandlers.ACCEPT_ENCODING;
+import static org.jboss.pnc.common.http.GzipBodyHandlers.CONTENT_ENCODING;
+import static org.jboss.pnc.common.http.GzipBodyHandlers.GZIP;
 
 /**
  * Wrapper around {@link HttpClient} that can handle PNC {@link Request}s.
  */
 @Slf4j
-public class PNCHttpClient {
+public class PNCHttpClient implements AutoCloseable {
+    /**
+     * Max number of characters of the response body included in the exception when the request fails.
+     */
+    private static final int ERROR_SNIPPET_LENGTH = 500;
+
+    /**
+     * Schedules retries of asynchronous requests for all clients. It only starts attempts and waits out backoff delays,
+     * sending and receiving runs on the {@link HttpClient}'s own threads, so a single daemon thread is enough.
+     */
+    private static final ScheduledExecutorService ASYNC_SCHEDULER = newAsyncScheduler();
+
+    /**
+     * Methods safe to send twice, only these are hedged.
+     */
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
     private final HttpClient client;
     private final ObjectMapper objectMapper;
     private final Duration requestTimeout;
-    private final RetryPolicy<HttpResponse<String>> retryPolicy;
+    private final RetryPolicy<HttpResponse<?>> retryPolicy;
+    private final PNCHttpClientConfig.ConcurrencyLimitConfig concurrencyLimitConfig;
+    private final Map<String, ConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+    private final PNCHttpClientConfig.CircuitBreakerConfig circuitBreakerConfig;
+    private final Map<String, CircuitBreaker<HttpResponse<?>>> circuitBreakers = new ConcurrentHashMap<>();
+    /**
+     * Half-open permits of cancelled attempts per host. Failsafe can't release a permit without recording a result, so
+     * they are handed out again here until the circuit breaker changes state.
+     */
+    private final Map<String, AtomicInteger> abandonedPermits = new ConcurrentHashMap<>();
+    private final PNCHttpClientConfig.HedgingConfig hedgingConfig;
+    private final Map<String, RequestHedger> hedgers = new ConcurrentHashMap<>();
+    private final PNCHttpClientConfig.CompressionConfig compressionConfig;
+    private final PNCHttpClientConfig.TracingConfig tracingConfig;
+    private final PNCHttpClientConfig.RetryBudgetConfig retryBudgetConfig;
+    private final Map<String, RetryBudget> retryBudgets = new ConcurrentHashMap<>();
+    private final String warmupMethod;
+    private final InFlightRequests<HttpResponse<String>> inFlightRequests;
     /**
      * Supplier of authentication token to be used with every request. When set, will set the
      * {@link org.jboss.pnc.api.constants.HttpHeaders#AUTHORIZATION_STRING} header with scheme "Bearer". It is not
@@ -60,7 +133,8 @@ public class PNCHttpClient {
     /**
      * Supplier of {@link org.jboss.pnc.api.constants.HttpHeaders#AUTHORIZATION_STRING} header value. No scheme is
      * assumed (Bearer, Basic) and it's up to the supplier to specify it. This supplier is more generic than
-     * tokenSupplier since no scheme is assumed. if tokenSupplier is specified, this takes priority over this.
+     * tokenSupplier since no scheme is assumed. if tokenSupplier is specified, this takes priority over this. Wrap
+     * suppliers fetching the credential from an identity provider in {@link CachingAuthSupplier}.
      */
     @Setter
     private Supplier<String> authValueSupplier;
@@ -71,23 +145,93 @@ public class PNCHttpClient {
     @Setter
     private Predicate<Integer> abortRetriesOnStatus = (_ignored) -> false;
 
+    /**
+     * Cache of GET responses returned by {@link #sendRequestForResponse(Request)} and
+     * {@link #sendRequestForResponseAsync(Request)}. Disabled when null (default).
+     */
+    @Getter
+    @Setter
+    private HttpResponseCache responseCache;
+
+    private volatile HttpClientMetrics metrics;
+
+    /**
+     * State of this client published to {@link #metrics}, closed when the metrics are replaced.
+     */
+    private HttpClientMetrics.Observation metricsObservation;
+
+    /**
+     * Executor running the HTTP client and the callbacks of the asynchronous requests, null when the JDK default is
+     * used.
+     */
+    @Getter
+    private final Executor executor;
+
+    /**
+     * Executor created from {@link PNCHttpClientConfig#executorConfig()}, shut down by {@link #close()}. Null when the
+     * executor was passed to the constructor or the JDK default is used.
+     */
+    private final ExecutorService ownExecutor;
+
+    /**
+     * Warm-ups repeated according to {@link PNCHttpClientConfig.WarmupConfig#keepWarmInterval()}, cancelled by
+     * {@link #close()}. Null when not configured.
+     */
+    private final ScheduledFuture<?> keepingWarm;
+
+    /**
+     * Tracer creating the client spans when enabled by {@link PNCHttpClientConfig.TracingConfig#clientSpans()}.
+     * Defaults to the tracer of {@link GlobalOpenTelemetry}.
+     */
+    @Setter
+    private Tracer tracer;
+
+    /**
+     * Listener notified with the host and the new state when a circuit breaker of a host changes state.
+     */
+    @Setter
+    private BiConsumer<String, CircuitBreaker.State> circuitBreakerListener = (host, state) -> {
+    };
+
     public PNCHttpClient(PNCHttpClientConfig config) {
         this(Json.newObjectMapper(), config);
     }
 
     public PNCHttpClient(ObjectMapper objectMapper, PNCHttpClientConfig config) {
+        this(objectMapper, config, null);
+    }
+
+    /**
+     * @param executor executor running the HTTP client and the callbacks of the asynchronous requests, e.g. a bounded
+     *        pool from {@link org.jboss.pnc.common.concurrent.mdc.MDCExecutors}; null creates one according to
+     *        {@link PNCHttpClientConfig#executorConfig()}
+     */
+    public PNCHttpClient(ObjectMapper objectMapper, PNCHttpClientConfig config, Executor executor) {
         HttpClient.Builder builder = HttpClient.newBuilder()
                 .connectTimeout(config.connectTimeout())
                 .followRedirects(HttpClient.Redirect.NORMAL);
         if (config.forceHTTP11()) {
             builder.version(HttpClient.Version.HTTP_1_1);
         }
+        this.ownExecutor = executor != null ? null : newExecutor(config.executorConfig());
+        this.executor = executor != null ? executor : ownExecutor;
+        if (this.executor != null) {
+            builder.executor(this.executor);
+        }
         this.client = builder.build();
         this.objectMapper = objectMapper;
         this.requestTimeout = config.requestTimeout();
+        this.concurrencyLimitConfig = config.concurrencyLimitConfig();
+        this.circuitBreakerConfig = config.circuitBreakerConfig();
+        this.hedgingConfig = config.hedgingConfig();
+        this.compressionConfig = config.compressionConfig();
+        this.tracingConfig = config.tracingConfig();
+        this.retryBudgetConfig = config.retryBudgetConfig();
+        this.warmupMethod = config.warmupConfig().method();
+        this.inFlightRequests = config.deduplicationConfig().enabled() ? new InFlightRequests<>() : null;
 
         PNCHttpClientConfig.RetryConfig retryConfig = config.retryConfig();
-        retryPolicy = RetryPolicy.<HttpResponse<String>> builder()
+        retryPolicy = RetryPolicy.<HttpResponse<?>> builder()
                 .withBackoff(retryConfig.backoffInitialDelay(), retryConfig.backoffMaxDelay())
                 .withMaxRetries(retryConfig.maxRetries())
                 .abortOn(this::abortOn)
@@ -100,9 +244,185 @@ public class PNCHttpClient {
                                 e.getLastException().getMessage()))
                 .onFailure(e -> log.warn("Request couldn't be sent.", e.getException()))
                 .build();
+
+        PNCHttpClientConfig.WarmupConfig warmupConfig = config.warmupConfig();
+        List<URI> warmupUris = warmupConfig.uris().orElse(List.of());
+        Duration interval = warmupConfig.keepWarmInterval();
+        if (warmupUris.isEmpty()) {
+            keepingWarm = null;
+        } else if (interval.isZero() || interval.isNegative()) {
+            keepingWarm = null;
+            warmUp(warmupUris);
+        } else {
+            keepingWarm = keepWarm(warmupUris, interval);
+        }
+    }
+
+    /**
+     * Stops the warm-ups configured by {@link PNCHttpClientConfig#warmupConfig()}, stops publishing the state of this
+     * client to the metrics and shuts down the executor created from {@link PNCHttpClientConfig#executorConfig()}. An
+     * executor passed to the constructor is left running. Requests in flight are not cancelled, but asynchronous
+     * requests can't continue once the executor is shut down.
+     */
+    @Override
+    public void close() {
+        if (keepingWarm != null) {
+            keepingWarm.cancel(false);
+        }
+        synchronized (this) {
+            if (metricsObservation != null) {
+                metricsObservation.close();
+                metricsObservation = null;
+            }
+        }
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Opens the connections to the hosts of the URIs ahead of the first requests, so these don't wait for the DNS
+     * lookup, TCP and TLS handshakes and HTTP/2 negotiation. Sends a cheap request (HEAD by default, see
+     * {@link PNCHttpClientConfig.WarmupConfig#method()}) to every URI, without authorization, retries or limits.
+     *
+     * @param uris base URIs of the hosts, e.g. {@code https://host/api}
+     * @return future completed when every URI responded or failed, failures are only logged
+     */
+    public CompletableFuture<Void> warmUp(Collection<URI> uris) {
+        return CompletableFuture.allOf(uris.stream().map(this::sendWarmup).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Warms up the connections to the hosts of the URIs now and then repeatedly after the interval, so they aren't
+     * closed for being idle. The warm-up requests are sent without waiting for the previous ones to complete.
+     *
+     * The scheduler keeps running the warm-ups, and so keeps this client reachable, until the returned future is
+     * cancelled.
+     *
+     * @param uris base URIs of the hosts
+     * @param interval delay between sending the warm-up requests and sending them again, should be shorter than the
+     *        idle timeout of the servers
+     * @return future cancelling the warm-ups when cancelled
+     * @throws IllegalArgumentException when the interval is not positive
+     */
+    public ScheduledFuture<?> keepWarm(Collection<URI> uris, Duration interval) {
+        if (interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("Keep warm interval must be positive, was " + interval);
+        }
+        List<URI> warmed = List.copyOf(uris);
+        return ASYNC_SCHEDULER
+                .scheduleWithFixedDelay(() -> warmUp(warmed), 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private CompletableFuture<Void> sendWarmup(URI uri) {
+        HttpRequest httpRequest = HttpRequest.newBuilder(uri)
+                .method(warmupMethod, HttpRequest.BodyPublishers.noBody())
+                .timeout(requestTimeout)
+                .build();
+        return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.discarding()).handle((response, error) -> {
+            if (error != null) {
+                log.warn("Cannot warm up the connection to {}: {}", uri, error.getMessage());
+            } else {
+                log.debug("Connection to {} warmed up, response status: {}", uri, response.statusCode());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Records OpenTelemetry metrics of the requests sent by this client and publishes the state of its limiters,
+     * breakers, hedgers and response cache, see {@link HttpClientMetrics}. Null (default) disables metrics.
+     */
+    public synchronized void setMetrics(HttpClientMetrics metrics) {
+        if (metricsObservation != null) {
+            metricsObservation.close();
+            metricsObservation = null;
+        }
+        if (metrics != null) {
+            metricsObservation = metrics.observe(this);
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return concurrency limiters of the hosts requested so far, by scheme and authority (e.g.
+     *         {@code https://host:8080}); empty when concurrency limiting is disabled
+     */
+    public Map<String, ConcurrencyLimiter> getConcurrencyLimiters() {
+        return Collections.unmodifiableMap(concurrencyLimiters);
+    }
+
+    /**
+     * @return circuit breakers of the hosts requested so far, by scheme and authority; empty when circuit breakers are
+     *         disabled
+     */
+    public Map<String, CircuitBreaker<HttpResponse<?>>> getCircuitBreakers() {
+        return Collections.unmodifiableMap(circuitBreakers);
+    }
+
+    /**
+     * @return request hedgers of the hosts requested so far, by scheme and authority; empty when hedging is disabled
+     */
+    public Map<String, RequestHedger> getHedgers() {
+        return Collections.unmodifiableMap(hedgers);
+    }
+
+    /**
+     * @return retry budgets of the hosts requested so far, by scheme and authority; empty when the retry budget is
+     *         disabled
+     */
+    public Map<String, RetryBudget> getRetryBudgets() {
+        return Collections.unmodifiableMap(retryBudgets);
+    }
+
+    /**
+     * @return executor according to the config, null for the JDK default
+     */
+    private static ExecutorService newExecutor(PNCHttpClientConfig.ExecutorConfig executorConfig) {
+        if (executorConfig.virtualThreads()) {
+            try {
+                // looked up reflectively, the library is built for Java 11
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return new MDCThreadPoolExecutor((ExecutorService) factory.invoke(null));
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads need Java 21 or later, using platform threads.");
+            }
+        }
+        if (executorConfig.threads() <= 0) {
+            return null;
+        }
+        ThreadFactory threadFactory = new NamedThreadFactory("pnc-http-client");
+        return MDCExecutors.newFixedThreadPool(executorConfig.threads(), runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return number of requests that got the response of an identical request in flight instead of being sent
+     */
+    public long getSharedRequests() {
+        return inFlightRequests == null ? 0 : inFlightRequests.getShared();
+    }
+
+    private static ScheduledExecutorService newAsyncScheduler() {
+        ThreadFactory threadFactory = new NamedThreadFactory("pnc-http-client-async");
+        return new MDCScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     private boolean abortOn(Throwable throwable) {
+        if (throwable instanceof RetryBudgetExhaustedException) {
+            return true;
+        }
+        if (throwable.getCause() instanceof CircuitBreakerOpenException) {
+            // fail fast, the breaker won't let the retries through until it half-opens
+            return true;
+        }
         if (throwable instanceof PNCHttpClientException) {
             PNCHttpClientException exception = (PNCHttpClientException) throwable;
             if (exception.getStatus() != null) {
@@ -131,8 +451,16 @@ public class PNCHttpClient {
      * @throws PNCHttpClientException When there is error sending the request.
      */
     public void trySendRequest(Request request, Object payload) {
-        HttpRequest httpRequest = prepareHttpRequest(request, payload);
-        doSendRequest(httpRequest);
+        ClientSpan span = startSpan(request);
+        HttpRequest httpRequest = prepareHttpRequest(request, payload, span);
+        try {
+            span.end(doSendRequest(httpRequest, span).statusCode(), null);
+        } catch (RuntimeException e) {
+            span.end(0, e);
+            throw e;
+        } finally {
+            requestCompleted(httpRequest, 1, null);
+        }
     }
 
     /**
@@ -154,8 +482,12 @@ public class PNCHttpClient {
      * @throws PNCHttpClientException When there is error sending the request.
      */
     public void sendRequest(Request request, Object payload) {
-        HttpRequest httpRequest = prepareHttpRequest(request, payload);
-        Failsafe.with(retryPolicy).run(() -> doSendRequest(httpRequest));
+        ClientSpan span = startSpan(request);
+        HttpRequest httpRequest = prepareHttpRequest(request, payload, span);
+        withRetries(httpRequest, span).get(context -> {
+            checkRetryBudget(context, httpRequest);
+            return doSendRequest(httpRequest, span);
+        });
     }
 
     /**
@@ -167,26 +499,727 @@ public class PNCHttpClient {
     }
 
     public HttpResponse<String> sendRequestForResponse(Request request, Object payload) {
-        HttpRequest httpRequest = prepareHttpRequest(request, payload);
-        return Failsafe.with(retryPolicy).get(() -> doSendRequestForResponse(httpRequest));
+        ClientSpan span = startSpan(request);
+        HttpRequest.Builder builder = prepareHttpRequestBuilder(request, payload, span);
+        HttpRequest httpRequest = builder.build();
+        if (!isShared(httpRequest)) {
+            return sendRequestForResponse(builder, httpRequest, span);
+        }
+        return inFlightRequests.execute(
+                InFlightRequests.key(httpRequest),
+                () -> sendRequestForResponse(builder, httpRequest, span),
+                (response, error) -> span.end(response == null ? 0 : response.statusCode(), error));
+    }
+
+    private HttpResponse<String> sendRequestForResponse(
+            HttpRequest.Builder builder,
+            HttpRequest httpRequest,
+            ClientSpan span) {
+        if (responseCache != null && httpRequest.method().equals("GET")) {
+            return sendCachedRequestForResponse(builder, httpRequest, span);
+        }
+        return withRetries(httpRequest, span).get(context -> {
+            checkRetryBudget(context, httpRequest);
+            return doSendRequestForResponse(httpRequest, false, span);
+        });
+    }
+
+    /**
+     * @return true if the request may share the response of an identical request in flight
+     */
+    private boolean isShared(HttpRequest httpRequest) {
+        return inFlightRequests != null && IDEMPOTENT_METHODS.contains(httpRequest.method());
+    }
+
+    private HttpResponse<String> sendCachedRequestForResponse(
+            HttpRequest.Builder builder,
+            HttpRequest httpRequest,
+            ClientSpan span) {
+        String key = cacheKey(httpRequest);
+        HttpResponseCache.Entry cached = responseCache.get(key);
+        if (cached != null && cached.isFresh()) {
+            return cacheHit(httpRequest, cached, span);
+        }
+
+        HttpRequest conditionalRequest = withValidators(builder, httpRequest, cached);
+        HttpResponse<String> response = withRetries(conditionalRequest, span).get(context -> {
+            checkRetryBudget(context, conditionalRequest);
+            return doSendRequestForResponse(conditionalRequest, cached != null, span);
+        });
+        return cacheResponse(key, cached, conditionalRequest, response);
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendCachedRequestForResponseAsync(
+            HttpRequest.Builder builder,
+            HttpRequest httpRequest,
+            ClientSpan span) {
+        String key = cacheKey(httpRequest);
+        HttpResponseCache.Entry cached = responseCache.get(key);
+        if (cached != null && cached.isFresh()) {
+            return CompletableFuture.completedFuture(cacheHit(httpRequest, cached, span));
+        }
+
+        HttpRequest conditionalRequest = withValidators(builder, httpRequest, cached);
+        CompletableFuture<HttpResponse<String>> execution = withRetries(conditionalRequest, span)
+                .with(ASYNC_SCHEDULER)
+                .getStageAsync(context -> {
+                    checkRetryBudget(context, conditionalRequest);
+                    return cancellable(
+                            context,
+                            doSendRequestForResponseAsync(conditionalRequest, cached != null, span));
+                });
+        return cancelling(
+                execution.thenApply(response -> cacheResponse(key, cached, conditionalRequest, response)),
+                execution);
+    }
+
+    private static String cacheKey(HttpRequest httpRequest) {
+        return HttpResponseCache.key(
+                httpRequest.uri(),
+                httpRequest.headers().firstValue(AUTHORIZATION_STRING).orElse(null),
+                httpRequest.headers().firstValue(ACCEPT).orElse(null));
+    }
+
+    private HttpResponse<String> cacheHit(HttpRequest httpRequest, HttpResponseCache.Entry cached, ClientSpan span) {
+        log.debug("Serving response to {} from cache.", httpRequest.uri());
+        responseCache.recordHit(cached);
+        span.endFromCache();
+        return new CachedHttpResponse(httpRequest, cached);
+    }
+
+    /**
+     * @return the request made conditional on the cached response being modified, or the request itself when nothing
+     *         is cached
+     */
+    private static HttpRequest withValidators(
+            HttpRequest.Builder builder,
+            HttpRequest httpRequest,
+            HttpResponseCache.Entry cached) {
+        if (cached == null) {
+            return httpRequest;
+        }
+        cached.getValidators().forEach(builder::setHeader);
+        return builder.build();
+    }
+
+    /**
+     * Serves the cached response on {@code 304 Not Modified}, otherwise stores the response when it is cacheable.
+     */
+    private HttpResponse<String> cacheResponse(
+            String key,
+            HttpResponseCache.Entry cached,
+            HttpRequest httpRequest,
+            HttpResponse<String> response) {
+        if (response.statusCode() == 304) {
+            log.debug("Response to {} not modified, serving it from cache.", httpRequest.uri());
+            HttpResponseCache.Entry refreshed = responseCache
+                    .recordNotModified(key, cached, response.headers().map());
+            return new CachedHttpResponse(httpRequest, refreshed);
+        }
+        responseCache.recordMiss(key, response.body(), response.headers().map());
+        return response;
+    }
+
+    /**
+     * Sends the request and returns the response with the body not read yet, so large bodies don't have to fit in
+     * memory. Retries according to the configured retry policy until a successful status is received; reading the body
+     * is not retried.
+     *
+     * NOTE: The caller must close the body stream to release the connection.
+     */
+    public HttpResponse<InputStream> sendRequestForStream(Request request) {
+        return sendRequestForStream(request, request.getAttachment());
+    }
+
+    public HttpResponse<InputStream> sendRequestForStream(Request request, Object payload) {
+        ClientSpan span = startSpan(request);
+        HttpRequest httpRequest = prepareHttpRequest(request, payload, span);
+        return withRetries(httpRequest, span).get(context -> {
+            checkRetryBudget(context, httpRequest);
+            return doSendRequestForStream(httpRequest, span);
+        });
+    }
+
+    /**
+     * Sends the request and deserializes the JSON response body with the client's {@link ObjectMapper} directly from
+     * the received bytes. Retries according to the configured retry policy.
+     *
+     * @return the deserialized body, null when the response has no content
+     * @throws PNCHttpClientException When there is error sending the request or reading the response.
+     */
+    public <T> T sendRequestForObject(Request request, Class<T> responseType) {
+        return sendRequestForObject(request, request.getAttachment(), responseType);
+    }
+
+    public <T> T sendRequestForObject(Request request, Object payload, Class<T> responseType) {
+        return readObject(sendRequestForStream(request, payload), objectMapper.constructType(responseType));
+    }
+
+    /**
+     * Same as {@link #sendRequestForObject(Request, Class)} for generic types.
+     */
+    public <T> T sendRequestForObject(Request request, TypeReference<T> responseType) {
+        return sendRequestForObject(request, request.getAttachment(), responseType);
+    }
+
+    public <T> T sendRequestForObject(Request request, Object payload, TypeReference<T> responseType) {
+        return readObject(sendRequestForStream(request, payload), objectMapper.constructType(responseType));
+    }
+
+    private <T> T readObject(HttpResponse<InputStream> response, JavaType responseType) {
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 204) {
+                return null;
+            }
+            return objectMapper.readValue(body, responseType);
+        } catch (IOException e) {
+            throw new PNCHttpClientException(
+                    "Failure to read response of " + response.request().method() + " " + response.request().uri()
+                            + " as " + responseType,
+                    e);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #trySendRequest(Request)}. No thread is blocked while waiting for the response.
+     * Cancelling the returned future cancels the exchange.
+     *
+     * @param request Request to be sent.
+     * @return Future completed when the response is received, or completed exceptionally with
+     *         {@link PNCHttpClientException} when there is error sending the request.
+     */
+    public CompletableFuture<Void> trySendRequestAsync(Request request) {
+        return trySendRequestAsync(request, request.getAttachment());
+    }
+
+    /**
+     * Asynchronous variant of {@link #trySendRequest(Request, Object)}.
+     *
+     * @see #trySendRequestAsync(Request)
+     */
+    public CompletableFuture<Void> trySendRequestAsync(Request request, Object payload) {
+        ClientSpan span = startSpan(request);
+        HttpRequest httpRequest = prepareHttpRequest(request, payload, span);
+        CompletableFuture<HttpResponse<Void>> sent = doSendRequestAsync(httpRequest, span);
+        return cancelling(sent.whenComplete((response, error) -> {
+            span.end(response == null ? 0 : response.statusCode(), error);
+            requestCompleted(httpRequest, 1, null);
+        }).thenApply(response -> null), sent);
+    }
+
+    /**
+     * Asynchronous variant of {@link #sendRequest(Request)}. Retries are scheduled according to the retry config, no
+     * thread is blocked while waiting for the response or between the retries. Cancelling the returned future stops
+     * the retries.
+     *
+     * @param request Request to be sent.
+     * @return Future completed when the request is sent successfully, or completed exceptionally with
+     *         {@link PNCHttpClientException} when there is error sending the request.
+     */
+    public CompletableFuture<Void> sendRequestAsync(Request request) {
+        return sendRequestAsync(request, request.getAttachment());
+    }
+
+    /**
+     * Asynchronous variant of {@link #sendRequest(Request, Object)}.
+     *
+     * @see #sendRequestAsync(Request)
+     */
+    public CompletableFuture<Void> sendRequestAsync(Request request, Object payload) {
+        ClientSpan span = startSpan(request);
+        HttpRequest httpRequest = prepareHttpRequest(request, payload, span);
+        CompletableFuture<HttpResponse<Void>> execution = withRetries(httpRequest, span).with(ASYNC_SCHEDULER)
+                .<HttpResponse<Void>> getStageAsync(context -> {
+                    checkRetryBudget(context, httpRequest);
+                    return cancellable(context, doSendRequestAsync(httpRequest, span));
+                });
+        return cancelling(execution.thenApply(response -> null), execution);
+    }
+
+    /**
+     * Asynchronous variant of {@link #sendRequestForResponse(Request)}.
+     *
+     * @see #sendRequestAsync(Request)
+     */
+    public CompletableFuture<HttpResponse<String>> sendRequestForResponseAsync(Request request) {
+        return sendRequestForResponseAsync(request, request.getAttachment());
     }
 
-    private HttpResponse<String> doSendRequestForResponse(HttpRequest httpRequest) {
+    public CompletableFuture<HttpResponse<String>> sendRequestForResponseAsync(Request request, Object payload) {
+        ClientSpan span = startSpan(request);
+        HttpRequest.Builder builder = prepareHttpRequestBuilder(request, payload, span);
+        HttpRequest httpRequest = builder.build();
+        if (!isShared(httpRequest)) {
+            return sendRequestForResponseAsync(builder, httpRequest, span);
+        }
+        return inFlightRequests.executeAsync(
+                InFlightRequests.key(httpRequest),
+                () -> sendRequestForResponseAsync(builder, httpRequest, span),
+                (response, error) -> span.end(response == null ? 0 : response.statusCode(), error));
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendRequestForResponseAsync(
+            HttpRequest.Builder builder,
+            HttpRequest httpRequest,
+            ClientSpan span) {
+        if (responseCache != null && httpRequest.method().equals("GET")) {
+            return sendCachedRequestForResponseAsync(builder, httpRequest, span);
+        }
+        return withRetries(httpRequest, span).with(ASYNC_SCHEDULER)
+                .getStageAsync(context -> {
+                    checkRetryBudget(context, httpRequest);
+                    return cancellable(context, doSendRequestForResponseAsync(httpRequest, false, span));
+                });
+    }
+
+    /**
+     * @return executor retrying according to the retry config, ending the span and recording the outcome when metrics
+     *         are enabled
+     */
+    private FailsafeExecutor<HttpResponse<?>> withRetries(HttpRequest httpRequest, ClientSpan span) {
+        FailsafeExecutor<HttpResponse<?>> executor = Failsafe.with(retryPolicy);
+        if (span != ClientSpan.NONE) {
+            executor = executor.onComplete(
+                    event -> span.end(
+                            event.getResult() == null ? 0 : event.getResult().statusCode(),
+                            event.getException()));
+        }
+        if (metrics != null) {
+            executor = executor.onComplete(
+                    event -> requestCompleted(httpRequest, event.getAttemptCount(), event.getException()));
+        }
+        RetryBudget retryBudget = retryBudget(httpRequest);
+        if (retryBudget != null) {
+            executor = executor.onSuccess(event -> retryBudget.recordSuccess());
+        }
+        return executor;
+    }
+
+    /**
+     * Takes a retry from the retry budget of the host before every attempt but the first.
+     *
+     * @throws RetryBudgetExhaustedException when the budget is used up
+     */
+    private void checkRetryBudget(ExecutionContext<?> context, HttpRequest httpRequest) {
+        RetryBudget retryBudget = retryBudget(httpRequest);
+        if (retryBudget == null || !context.isRetry() || retryBudget.tryRetry()) {
+            return;
+        }
+        Throwable lastException = context.getLastException();
+        throw new RetryBudgetExhaustedException(
+                "Sending request to " + httpRequest.method() + " " + httpRequest.uri() + " failed, retry budget of "
+                        + retryBudget.getName() + " is exhausted"
+                        + (lastException == null ? "" : ", last error: " + lastException.getMessage()),
+                lastException);
+    }
+
+    private ClientSpan startSpan(Request request) {
+        if (!tracingConfig.clientSpans()) {
+            return ClientSpan.NONE;
+        }
+        Tracer currentTracer = tracer;
+        if (currentTracer == null) {
+            currentTracer = GlobalOpenTelemetry.getTracer(HttpClientMetrics.INSTRUMENTATION_NAME);
+        }
+        return ClientSpan.start(currentTracer, request.getMethod().name(), request.getUri());
+    }
+
+    /**
+     * @param failure the error the request failed with after retrying, null when it succeeded or wasn't retried
+     */
+    private void requestCompleted(HttpRequest httpRequest, int attemptCount, Throwable failure) {
+        HttpClientMetrics currentMetrics = metrics;
+        if (currentMetrics == null) {
+            return;
+        }
+        currentMetrics.requestCompleted(httpRequest.uri(), httpRequest.method(), attemptCount);
+        if (failure != null) {
+            if (abortOn(failure)) {
+                currentMetrics.retriesAborted(httpRequest.uri(), httpRequest.method());
+            } else {
+                currentMetrics.retriesExhausted(httpRequest.uri(), httpRequest.method());
+            }
+        }
+    }
+
+    private static <T> CompletableFuture<T> cancellable(ExecutionContext<?> context, CompletableFuture<T> attempt) {
+        context.onCancel(() -> attempt.cancel(true));
+        return attempt;
+    }
+
+    /**
+     * Futures derived with {@code thenApply} and the like don't pass cancellation back to the future they were derived
+     * from. Makes cancelling {@code derived} cancel {@code source}, e.g. the Failsafe execution with its retries.
+     */
+    private static <T> CompletableFuture<T> cancelling(CompletableFuture<T> derived, CompletableFuture<?> source) {
+        derived.whenComplete((result, error) -> {
+            if (derived.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return derived;
+    }
+
+    /**
+     * Sends one attempt and, when the credential of a {@link CachingAuthSupplier} is rejected, once more with a new
+     * credential.
+     */
+    private <T> HttpResponse<T> send(
+            HttpRequest httpRequest,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            ClientSpan span) throws IOException, InterruptedException {
+        HttpResponse<T> response = sendWithinLimits(httpRequest, bodyHandler, span);
+        HttpRequest reauthorized = reauthorize(response);
+        if (reauthorized == null) {
+            return response;
+        }
+        discard(response);
+        return sendWithinLimits(reauthorized, bodyHandler, span);
+    }
+
+    /**
+     * Sends one attempt, within the concurrency limit and through the circuit breaker of the host when enabled.
+     */
+    private <T> HttpResponse<T> sendWithinLimits(
+            HttpRequest httpRequest,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            ClientSpan span) throws IOException, InterruptedException {
+        RequestHedger hedger = hedger(httpRequest);
+        if (hedger != null) {
+            return await(hedger.hedge(() -> sendOnceAsync(httpRequest, bodyHandler, span), PNCHttpClient::discard));
+        }
+
+        ConcurrencyLimiter limiter = concurrencyLimiter(httpRequest);
+        ConcurrencyLimiter.Permit permit = limiter == null ? null : limiter.acquire();
+        try {
+            CircuitBreaker<HttpResponse<?>> circuitBreaker = acquireCircuitBreaker(httpRequest);
+            HttpClientMetrics currentMetrics = metrics;
+            long start = currentMetrics == null ? System.nanoTime() : currentMetrics.attemptStarted(httpRequest);
+            try {
+                HttpResponse<T> response = client.send(httpRequest, bodyHandler);
+                onResponse(permit, circuitBreaker, response.statusCode());
+                if (currentMetrics != null) {
+                    currentMetrics.attemptCompleted(httpRequest, start, response, null);
+                }
+                span.attemptCompleted(start, response, null);
+                return response;
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                onError(permit, circuitBreaker, httpRequest, e);
+                if (currentMetrics != null) {
+                    currentMetrics.attemptCompleted(httpRequest, start, null, e);
+                }
+                span.attemptCompleted(start, null, e);
+                throw e;
+            }
+        } finally {
+            if (permit != null) {
+                permit.ignore();
+            }
+        }
+    }
+
+    private Supplier<String> authSupplier() {
+        return tokenSupplier != null ? tokenSupplier : authValueSupplier;
+    }
+
+    /**
+     * @return the request with a new credential when the response rejected the credential of a
+     *         {@link CachingAuthSupplier}, null otherwise
+     */
+    private HttpRequest reauthorize(HttpResponse<?> response) {
+        Supplier<String> supplier = authSupplier();
+        if (response.statusCode() != 401 || !(supplier instanceof CachingAuthSupplier)) {
+            return null;
+        }
+        HttpRequest httpRequest = response.request();
+        String prefix = tokenSupplier != null ? "Bearer " : "";
+        String rejected = httpRequest.headers().firstValue(AUTHORIZATION_STRING).orElse(null);
+        if (rejected == null || !rejected.startsWith(prefix)) {
+            return null;
+        }
+        ((CachingAuthSupplier) supplier).invalidate(rejected.substring(prefix.length()));
+        String renewed = prefix + supplier.get();
+        if (renewed.equals(rejected)) {
+            return null;
+        }
+        log.debug("Request to {} was not authorized, retrying with a new credential.", httpRequest.uri());
+        return withHeader(httpRequest, AUTHORIZATION_STRING, renewed);
+    }
+
+    /**
+     * Copies the request replacing the values of a header.
+     */
+    private static HttpRequest withHeader(HttpRequest httpRequest, String name, String value) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(httpRequest.uri())
+                .method(httpRequest.method(), httpRequest.bodyPublisher().orElse(HttpRequest.BodyPublishers.noBody()))
+                .expectContinue(httpRequest.expectContinue());
+        httpRequest.timeout().ifPresent(builder::timeout);
+        httpRequest.version().ifPresent(builder::version);
+        httpRequest.headers().map().forEach((header, values) -> {
+            if (!header.equalsIgnoreCase(name)) {
+                values.forEach(headerValue -> builder.header(header, headerValue));
+            }
+        });
+        return builder.setHeader(name, value).build();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Releases the connection held by a response nobody is going to read.
+     */
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof Closeable) {
+            try {
+                ((Closeable) response.body()).close();
+            } catch (IOException e) {
+                log.debug("Cannot close the response body.", e);
+            }
+        }
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(
+            HttpRequest httpRequest,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            ClientSpan span) {
+        CompletableFuture<HttpResponse<T>> sent = sendWithinLimitsAsync(httpRequest, bodyHandler, span);
+        if (!(authSupplier() instanceof CachingAuthSupplier)) {
+            return sent;
+        }
+        CompletableFuture<HttpResponse<T>> result = sent.thenCompose(response -> {
+            HttpRequest reauthorized = reauthorize(response);
+            if (reauthorized == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            discard(response);
+            return sendWithinLimitsAsync(reauthorized, bodyHandler, span);
+        });
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendWithinLimitsAsync(
+            HttpRequest httpRequest,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            ClientSpan span) {
+        RequestHedger hedger = hedger(httpRequest);
+        if (hedger != null) {
+            return hedger.hedge(() -> sendOnceAsync(httpRequest, bodyHandler, span), PNCHttpClient::discard);
+        }
+        return sendOnceAsync(httpRequest, bodyHandler, span);
+    }
+
+    /**
+     * Sends one attempt asynchronously, cancelling the returned future releases the slot or cancels the exchange.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendOnceAsync(
+            HttpRequest httpRequest,
+            HttpResponse.BodyHandler<T> bodyHandler,
+            ClientSpan span) {
+        ConcurrencyLimiter limiter = concurrencyLimiter(httpRequest);
+        CompletableFuture<ConcurrencyLimiter.Permit> acquired = limiter == null
+                ? CompletableFuture.completedFuture(null)
+                : limiter.acquireAsync();
+
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        acquired.whenComplete((permit, acquireError) -> {
+            if (acquireError != null) {
+                result.completeExceptionally(acquireError);
+                return;
+            }
+            if (result.isDone()) {
+                // cancelled while waiting for the slot
+                if (permit != null) {
+                    permit.ignore();
+                }
+                return;
+            }
+            CircuitBreaker<HttpResponse<?>> circuitBreaker;
+            try {
+                circuitBreaker = acquireCircuitBreaker(httpRequest);
+            } catch (PNCHttpClientException e) {
+                if (permit != null) {
+                    permit.ignore();
+                }
+                result.completeExceptionally(e);
+                return;
+            }
+            HttpClientMetrics currentMetrics = metrics;
+            long start = currentMetrics == null ? System.nanoTime() : currentMetrics.attemptStarted(httpRequest);
+            CompletableFuture<HttpResponse<T>> sent = client.sendAsync(httpRequest, bodyHandler);
+            sent.whenComplete((response, error) -> {
+                if (currentMetrics != null) {
+                    currentMetrics.attemptCompleted(httpRequest, start, response, error);
+                }
+                span.attemptCompleted(start, response, error);
+                if (error == null) {
+                    onResponse(permit, circuitBreaker, response.statusCode());
+                    result.complete(response);
+                } else {
+                    onError(permit, circuitBreaker, httpRequest, error);
+                    result.completeExceptionally(
+                            error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                                    : error);
+                }
+            });
+            result.whenComplete((response, error) -> {
+                if (result.isCancelled()) {
+                    sent.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                acquired.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    private static void onResponse(
+            ConcurrencyLimiter.Permit permit,
+            CircuitBreaker<HttpResponse<?>> circuitBreaker,
+            int status) {
+        if (permit != null) {
+            permit.onResponse(status);
+        }
+        if (circuitBreaker != null) {
+            if (status >= 500) {
+                circuitBreaker.recordFailure();
+            } else {
+                circuitBreaker.recordSuccess();
+            }
+        }
+    }
+
+    private void onError(
+            ConcurrencyLimiter.Permit permit,
+            CircuitBreaker<HttpResponse<?>> circuitBreaker,
+            HttpRequest httpRequest,
+            Throwable error) {
+        if (permit != null) {
+            permit.onError(error);
+        }
+        if (circuitBreaker == null) {
+            return;
+        }
+        // a cancelled attempt (e.g. a hedge that lost) says nothing about the host, only a half-open breaker holds
+        // a permit for it
+        if (isCancellation(error)) {
+            if (circuitBreaker.isHalfOpen()) {
+                abandonedPermits.computeIfAbsent(hostOf(httpRequest), host -> new AtomicInteger()).incrementAndGet();
+            }
+            return;
+        }
+        circuitBreaker.recordFailure();
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof CancellationException || cause instanceof InterruptedException;
+    }
+
+    private static String hostOf(HttpRequest httpRequest) {
+        return httpRequest.uri().getScheme() + "://" + httpRequest.uri().getAuthority();
+    }
+
+    private ConcurrencyLimiter concurrencyLimiter(HttpRequest httpRequest) {
+        if (!concurrencyLimitConfig.enabled()) {
+            return null;
+        }
+        return concurrencyLimiters
+                .computeIfAbsent(hostOf(httpRequest), host -> new ConcurrencyLimiter(host, concurrencyLimitConfig));
+    }
+
+    /**
+     * @return circuit breaker of the host with a permit acquired, the result must be recorded; null when disabled
+     * @throws PNCHttpClientException when the circuit breaker is open
+     */
+    private CircuitBreaker<HttpResponse<?>> acquireCircuitBreaker(HttpRequest httpRequest) {
+        if (!circuitBreakerConfig.enabled()) {
+            return null;
+        }
+        String host = hostOf(httpRequest);
+        CircuitBreaker<HttpResponse<?>> circuitBreaker = circuitBreakers.computeIfAbsent(host, this::newCircuitBreaker);
+        if (!circuitBreaker.tryAcquirePermit() && !reuseAbandonedPermit(host, circuitBreaker)) {
+            throw new PNCHttpClientException(
+                    "Sending request to " + httpRequest.method() + " " + httpRequest.uri()
+                            + " failed, circuit breaker of " + host + " is open",
+                    new CircuitBreakerOpenException(circuitBreaker));
+        }
+        return circuitBreaker;
+    }
+
+    private boolean reuseAbandonedPermit(String host, CircuitBreaker<HttpResponse<?>> circuitBreaker) {
+        AtomicInteger abandoned = abandonedPermits.get(host);
+        return abandoned != null && circuitBreaker.isHalfOpen()
+                && abandoned.getAndUpdate(permits -> permits == 0 ? 0 : permits - 1) > 0;
+    }
+
+    private RetryBudget retryBudget(HttpRequest httpRequest) {
+        if (!retryBudgetConfig.enabled()) {
+            return null;
+        }
+        return retryBudgets.computeIfAbsent(hostOf(httpRequest), host -> new RetryBudget(host, retryBudgetConfig));
+    }
+
+    private RequestHedger hedger(HttpRequest httpRequest) {
+        if (!hedgingConfig.enabled() || !IDEMPOTENT_METHODS.contains(httpRequest.method())) {
+            return null;
+        }
+        return hedgers
+                .computeIfAbsent(hostOf(httpRequest), host -> new RequestHedger(host, hedgingConfig, ASYNC_SCHEDULER));
+    }
+
+    private CircuitBreaker<HttpResponse<?>> newCircuitBreaker(String host) {
+        return CircuitBreaker.<HttpResponse<?>> builder()
+                .withFailureThreshold(circuitBreakerConfig.failureThreshold())
+                .withSuccessThreshold(circuitBreakerConfig.successThreshold())
+                .withDelay(circuitBreakerConfig.delay())
+                .onOpen(e -> circuitBreakerStateChanged(host, CircuitBreaker.State.OPEN))
+                .onHalfOpen(e -> circuitBreakerStateChanged(host, CircuitBreaker.State.HALF_OPEN))
+                .onClose(e -> circuitBreakerStateChanged(host, CircuitBreaker.State.CLOSED))
+                .build();
+    }
+
+    private void circuitBreakerStateChanged(String host, CircuitBreaker.State state) {
+        log.info("Circuit breaker of {} changed state to {}.", host, state);
+        // every state starts with fresh permits
+        abandonedPermits.remove(host);
+        circuitBreakerListener.accept(host, state);
+    }
+
+    private HttpResponse<String> doSendRequestForResponse(
+            HttpRequest httpRequest,
+            boolean conditional,
+            ClientSpan span) {
         log.debug("Sending the request {}", httpRequest);
         try {
-            HttpResponse<String> response = client
-                    .send(httpRequest, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            HttpResponse<String> response = send(httpRequest, stringBodyHandler(), span);
             log.debug("Response status code is: {}", response.statusCode());
 
-            if (response.statusCode() >= 300) {
-                // Include a small snippet of the body to aid debugging
-                String body = response.body();
-                String snippet = body == null ? "" : (body.length() > 500 ? body.substring(0, 500) + "..." : body);
-
-                throw new PNCHttpClientException(
-                        "Sending request to " + httpRequest.method() + " " + httpRequest.uri() + " failed with status: "
-                                + response.statusCode() + (snippet.isEmpty() ? "" : ", body: " + snippet),
-                        response.statusCode());
+            if (response.statusCode() >= 300 && !(conditional && response.statusCode() == 304)) {
+                throw failedWithStatus(httpRequest, response.statusCode(), response.body());
             }
 
             return response;
@@ -194,33 +1227,148 @@ public class PNCHttpClient {
             if (e instanceof InterruptedException) {
                 Thread.currentThread().interrupt();
             }
-            throw new PNCHttpClientException(
-                    "Sending request to " + httpRequest.method() + " " + httpRequest.uri() + " failed with error: "
-                            + e.getMessage(),
-                    e);
+            throw failedWithError(httpRequest, e);
         }
     }
 
-    private void doSendRequest(HttpRequest httpRequest) {
+    private HttpResponse<Void> doSendRequest(HttpRequest httpRequest, ClientSpan span) {
         log.debug("Sending the request {}", httpRequest);
         try {
-            HttpResponse<Void> response = client.send(httpRequest, HttpResponse.BodyHandlers.discarding());
+            HttpResponse<Void> response = send(httpRequest, HttpResponse.BodyHandlers.discarding(), span);
             log.debug("Response status code is: {}", response.statusCode());
             if (response.statusCode() >= 300) {
-                throw new PNCHttpClientException(
-                        "Sending request to " + httpRequest.method() + " " + httpRequest.uri() + " failed with status: "
-                                + response.statusCode(),
-                        response.statusCode());
+                throw failedWithStatus(httpRequest, response.statusCode(), null);
             }
+            return response;
         } catch (IOException | InterruptedException e) {
-            throw new PNCHttpClientException(
-                    "Sending request to " + httpRequest.method() + " " + httpRequest.uri() + " failed with error: "
-                            + e.getMessage(),
-                    e);
+            throw failedWithError(httpRequest, e);
         }
     }
 
-    private HttpRequest prepareHttpRequest(Request request, Object payload) {
+    private HttpResponse<InputStream> doSendRequestForStream(HttpRequest httpRequest, ClientSpan span) {
+        log.debug("Sending the request {}", httpRequest);
+        try {
+            HttpResponse<InputStream> response = send(httpRequest, streamBodyHandler(), span);
+            log.debug("Response status code is: {}", response.statusCode());
+
+            if (response.statusCode() >= 300) {
+                throw failedWithStatus(httpRequest, response.statusCode(), readSnippet(response.body()));
+            }
+            return response;
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw failedWithError(httpRequest, e);
+        }
+    }
+
+    /**
+     * Reads just enough of the body for the error message and closes the stream, the rest is never read.
+     */
+    private static String readSnippet(InputStream body) {
+        try (body) {
+            // a character takes at most 4 bytes in UTF-8
+            byte[] bytes = body.readNBytes(ERROR_SNIPPET_LENGTH * 4);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.debug("Cannot read the response body.", e);
+            return null;
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> doSendRequestForResponseAsync(
+            HttpRequest httpRequest,
+            boolean conditional,
+            ClientSpan span) {
+        log.debug("Sending the request {}", httpRequest);
+        return completeAsync(
+                httpRequest,
+                sendAsync(httpRequest, stringBodyHandler(), span),
+                true,
+                conditional);
+    }
+
+    private CompletableFuture<HttpResponse<Void>> doSendRequestAsync(HttpRequest httpRequest, ClientSpan span) {
+        log.debug("Sending the request {}", httpRequest);
+        return completeAsync(
+                httpRequest,
+                sendAsync(httpRequest, HttpResponse.BodyHandlers.discarding(), span),
+                false,
+                false);
+    }
+
+    /**
+     * Translates the outcome of {@link HttpClient#sendAsync} the same way the blocking variants do, the returned future
+     * fails with {@link PNCHttpClientException} itself rather than wrapped in {@link CompletionException}.
+     *
+     * @param conditional whether {@code 304 Not Modified} is an expected response rather than a failure
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> completeAsync(
+            HttpRequest httpRequest,
+            CompletableFuture<HttpResponse<T>> sent,
+            boolean includeBody,
+            boolean conditional) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        sent.whenComplete((response, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                        : error;
+                result.completeExceptionally(
+                        cause instanceof PNCHttpClientException ? cause : failedWithError(httpRequest, cause));
+                return;
+            }
+            log.debug("Response status code is: {}", response.statusCode());
+            if (response.statusCode() >= 300 && !(conditional && response.statusCode() == 304)) {
+                Object body = includeBody ? response.body() : null;
+                result.completeExceptionally(
+                        failedWithStatus(httpRequest, response.statusCode(), body == null ? null : body.toString()));
+                return;
+            }
+            result.complete(response);
+        });
+        // cancelling the result (e.g. by Failsafe) cancels the exchange
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private HttpResponse.BodyHandler<String> stringBodyHandler() {
+        return compressionConfig.decompressResponses() ? GzipBodyHandlers.ofString()
+                : HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8);
+    }
+
+    private HttpResponse.BodyHandler<InputStream> streamBodyHandler() {
+        return compressionConfig.decompressResponses() ? GzipBodyHandlers.ofInputStream()
+                : HttpResponse.BodyHandlers.ofInputStream();
+    }
+
+    private static PNCHttpClientException failedWithStatus(HttpRequest httpRequest, int status, String body) {
+        // Include a small snippet of the body to aid debugging
+        String snippet = body == null ? ""
+                : (body.length() > ERROR_SNIPPET_LENGTH ? body.substring(0, ERROR_SNIPPET_LENGTH) + "..." : body);
+
+        return new PNCHttpClientException(
+                "Sending request to " + httpRequest.method() + " " + httpRequest.uri() + " failed with status: "
+                        + status + (snippet.isEmpty() ? "" : ", body: " + snippet),
+                status);
+    }
+
+    private static PNCHttpClientException failedWithError(HttpRequest httpRequest, Throwable e) {
+        return new PNCHttpClientException(
+                "Sending request to " + httpRequest.method() + " " + httpRequest.uri() + " failed with error: "
+                        + e.getMessage(),
+                e);
+    }
+
+    private HttpRequest prepareHttpRequest(Request request, Object payload, ClientSpan span) {
+        return prepareHttpRequestBuilder(request, payload, span).build();
+    }
+
+    private HttpRequest.Builder prepareHttpRequestBuilder(Request request, Object payload, ClientSpan span) {
         log.debug("Performing HTTP request with these parameters: {}", request);
         HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri());
         builder.timeout(requestTimeout);
@@ -242,12 +1390,24 @@ public class PNCHttpClient {
         }
 
         request.getHeaders().forEach(h -> builder.header(h.getName(), h.getValue()));
+        if (tracingConfig.propagateHeaders()) {
+            MDCUtils.getHeadersFromMDC().forEach((name, value) -> {
+                if (request.getHeaders().stream().noneMatch(h -> h.getName().equalsIgnoreCase(name))) {
+                    builder.header(name, value);
+                }
+            });
+        }
+        span.inject(builder);
+        if (compressionConfig.decompressResponses()
+                && request.getHeaders().stream().noneMatch(h -> h.getName().equalsIgnoreCase(ACCEPT_ENCODING))) {
+            builder.header(ACCEPT_ENCODING, GZIP);
+        }
         if (tokenSupplier != null) {
             builder.setHeader(AUTHORIZATION_STRING, "Bearer " + tokenSupplier.get());
         } else if (authValueSupplier != null) {
             builder.setHeader(AUTHORIZATION_STRING, authValueSupplier.get());
         }
-        return builder.build();
+        return builder;
     }
 
     private void setMethodWithBody(HttpRequest.Builder builder, Request.Method method, Object payload) {
@@ -257,9 +1417,15 @@ public class PNCHttpClient {
             bp = HttpRequest.BodyPublishers.noBody();
         } else {
             try {
-                bp = HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(payload));
+                JsonBodyPublisher json = compressionConfig.compressRequests()
+                        ? JsonBodyPublisher.of(objectMapper, payload, compressionConfig.compressionThreshold())
+                        : JsonBodyPublisher.of(objectMapper, payload);
+                if (json.isGzipped()) {
+                    builder.header(CONTENT_ENCODING, GZIP);
+                }
+                bp = json;
                 builder.header(CONTENT_TYPE_STRING, MediaType.APPLICATION_JSON);
-            } catch (JsonProcessingException e) {
+            } catch (IOException e) {
                 throw new PNCHttpClientException("Failure to parse payload object to JSON", e);
             }
         }
@@ -19,7 +19,10 @@ package org.jboss.pnc.common.http;
 
 import io.smallrye.config.WithDefault;
 
+import java.net.URI;
 import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 
 public interface PNCHttpClientConfig {
     RetryConfig retryConfig();
@@ -44,6 +47,51 @@ public interface PNCHttpClientConfig {
     @WithDefault("false")
     boolean forceHTTP11();
 
+    /**
+     * Per-host adaptive limit of concurrent requests, disabled by default.
+     */
+    ConcurrencyLimitConfig concurrencyLimitConfig();
+
+    /**
+     * Per-host circuit breaker, disabled by default.
+     */
+    CircuitBreakerConfig circuitBreakerConfig();
+
+    /**
+     * Hedging of idempotent requests, disabled by default.
+     */
+    HedgingConfig hedgingConfig();
+
+    /**
+     * Gzip compression of requests and responses, disabled by default.
+     */
+    CompressionConfig compressionConfig();
+
+    /**
+     * Trace and MDC propagation and client spans, disabled by default.
+     */
+    TracingConfig tracingConfig();
+
+    /**
+     * Retry budget limiting the retries to each host, disabled by default.
+     */
+    RetryBudgetConfig retryBudgetConfig();
+
+    /**
+     * Threads running the HTTP client and the callbacks of the asynchronous requests, the JDK default by default.
+     */
+    ExecutorConfig executorConfig();
+
+    /**
+     * Connections opened ahead of the first requests, none by default.
+     */
+    WarmupConfig warmupConfig();
+
+    /**
+     * Sharing of identical concurrent requests, disabled by default.
+     */
+    DeduplicationConfig deduplicationConfig();
+
     interface RetryConfig {
         /**
          * The initial delay between retries, exponentially backing off to the maxDelay and multiplying consecutive
@@ -75,4 +123,236 @@ public interface PNCHttpClientConfig {
         Duration maxDuration();
     }
 
+    interface ConcurrencyLimitConfig {
+        /**
+         * If enabled, concurrent requests to each host are limited by a limit adapting to latency and errors of the
+         * host, see {@link ConcurrencyLimiter}. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * The limit a host starts with. Defaults to 20.
+         */
+        @WithDefault("20")
+        int initialLimit();
+
+        /**
+         * The limit never shrinks below this. Defaults to 1.
+         */
+        @WithDefault("1")
+        int minLimit();
+
+        /**
+         * The limit never grows above this. Defaults to 200.
+         */
+        @WithDefault("200")
+        int maxLimit();
+
+        /**
+         * The factor the limit is multiplied by when a request fails, is rejected as overloaded or is too slow.
+         * Defaults to 0.9.
+         */
+        @WithDefault("0.9")
+        double backoffRatio();
+
+        /**
+         * Requests taking longer than this shrink the limit like failed ones. Defaults to 5 seconds.
+         */
+        @WithDefault("PT5s")
+        Duration latencyThreshold();
+
+        /**
+         * How long a request over the limit waits for a free slot before it fails. Zero fails it immediately. Defaults
+         * to 0.
+         */
+        @WithDefault("PT0s")
+        Duration maxWait();
+    }
+
+    interface CircuitBreakerConfig {
+        /**
+         * If enabled, every host gets a circuit breaker. It opens after consecutive failures (I/O errors and 5xx
+         * responses), failing requests to the host immediately, without retrying. After the delay it lets probe
+         * requests through and closes when they succeed. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * The number of consecutive failures opening the breaker. Defaults to 5.
+         */
+        @WithDefault("5")
+        int failureThreshold();
+
+        /**
+         * How long the breaker stays open before it lets probe requests through. Defaults to 30 seconds.
+         */
+        @WithDefault("PT30s")
+        Duration delay();
+
+        /**
+         * The number of consecutive successful probe requests closing the breaker. Defaults to 1.
+         */
+        @WithDefault("1")
+        int successThreshold();
+    }
+
+    interface HedgingConfig {
+        /**
+         * If enabled, a GET, HEAD or OPTIONS request without a response after the hedging delay is sent once more and
+         * the first response wins, the other attempt is cancelled. See {@link RequestHedger}. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * Fixed hedging delay. Zero computes the delay per host as the {@link #percentile()} of recent response times.
+         * Defaults to 0.
+         */
+        @WithDefault("PT0s")
+        Duration delay();
+
+        /**
+         * The percentile of recent response times used as the hedging delay when no fixed delay is set. Defaults to
+         * 0.95.
+         */
+        @WithDefault("0.95")
+        double percentile();
+
+        /**
+         * The computed hedging delay never gets shorter than this, it is also used until enough response times are
+         * collected. Defaults to 50 milliseconds.
+         */
+        @WithDefault("PT0.05s")
+        Duration minDelay();
+
+        /**
+         * The number of hedged requests allowed per request sent, so hedging can't multiply the load when a host slows
+         * down. Defaults to 0.1 (at most 10% more requests).
+         */
+        @WithDefault("0.1")
+        double budget();
+    }
+
+    interface CompressionConfig {
+        /**
+         * If enabled, requests advertise {@code Accept-Encoding: gzip} and gzip encoded responses are decoded while
+         * they are read. The response headers are left as received. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean decompressResponses();
+
+        /**
+         * If enabled, JSON request bodies of at least {@link #compressionThreshold()} bytes are sent gzip encoded. The
+         * server must accept {@code Content-Encoding: gzip}. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean compressRequests();
+
+        /**
+         * Request bodies smaller than this many bytes are sent as they are, compressing them isn't worth it. Defaults
+         * to 8192.
+         */
+        @WithDefault("8192")
+        int compressionThreshold();
+    }
+
+    interface RetryBudgetConfig {
+        /**
+         * If enabled, retries to each host are limited to a fraction of its successful requests, see
+         * {@link RetryBudget}. Requests that can't retry fail with {@link RetryBudgetExhaustedException}. Defaults to
+         * false.
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * The number of retries allowed per successful request. Defaults to 0.1 (retries are at most 10% of the
+         * successful requests).
+         */
+        @WithDefault("0.1")
+        double ratio();
+
+        /**
+         * The number of retries per second allowed regardless of the successful requests, so requests can retry when
+         * there are none. Defaults to 1.
+         */
+        @WithDefault("1")
+        double minRetriesPerSecond();
+
+        /**
+         * The most retries the budget saves up, and starts with. Defaults to 100.
+         */
+        @WithDefault("100")
+        int burst();
+    }
+
+    interface ExecutorConfig {
+        /**
+         * The number of threads of the pool running the HTTP client and the callbacks of the asynchronous requests. The
+         * pool propagates the MDC to the callbacks. Zero uses the unbounded cached pool of the JDK. Ignored when an
+         * executor is passed to the {@link PNCHttpClient} constructor. Defaults to 0.
+         */
+        @WithDefault("0")
+        int threads();
+
+        /**
+         * If enabled, every task gets a new virtual thread instead of a pooled one. Needs Java 21 or later, on older
+         * versions {@link #threads()} applies. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean virtualThreads();
+    }
+
+    interface WarmupConfig {
+        /**
+         * URIs requested when the client is created, so the first requests find the connections to their hosts open
+         * (DNS resolved, TLS and HTTP/2 negotiated). See {@link PNCHttpClient#warmUp}. Defaults to none.
+         */
+        Optional<List<URI>> uris();
+
+        /**
+         * The method of the warm-up requests, their responses are discarded whatever the status. Defaults to HEAD.
+         */
+        @WithDefault("HEAD")
+        String method();
+
+        /**
+         * If positive, the {@link #uris()} are requested again this long after the previous warm-up requests were
+         * sent, so the connections aren't closed for being idle. Should be shorter than the idle timeout of the
+         * server. Defaults to 0 (only once). The warm-ups stop when the client is closed.
+         */
+        @WithDefault("PT0s")
+        Duration keepWarmInterval();
+    }
+
+    interface DeduplicationConfig {
+        /**
+         * If enabled, a GET, HEAD or OPTIONS request for a response identical to one already in flight (same method,
+         * URI and headers, including the authorization) gets the response of that one instead of being sent. Applies
+         * to {@link PNCHttpClient#sendRequestForResponse} and its asynchronous variant. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean enabled();
+    }
+
+    interface TracingConfig {
+        /**
+         * If enabled, requests carry the MDC values (see {@link org.jboss.pnc.api.constants.MDCHeaderKeys}) and the
+         * trace of the MDC as headers, unless the request sets them itself. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean propagateHeaders();
+
+        /**
+         * If enabled, every request gets a CLIENT span covering all its attempts, with an event per attempt, and
+         * carries the span in the traceparent and tracestate headers. The span is created by the tracer of
+         * {@link io.opentelemetry.api.GlobalOpenTelemetry} unless one is set by
+         * {@link PNCHttpClient#setTracer(io.opentelemetry.api.trace.Tracer)}. Defaults to false.
+         */
+        @WithDefault("false")
+        boolean clientSpans();
+    }
+
 }
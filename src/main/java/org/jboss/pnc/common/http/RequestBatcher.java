@@ -0,0 +1,218 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jboss.pnc.api.dto.Request;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Opt-in batching of fire-and-forget requests sent with {@link PNCHttpClient#sendRequestAsync(Request, Object)}.
+ * Requests with the same method, URI and headers are gathered until the batch is full or its linger time passes, then
+ * the batch is sent at once:
+ * <ul>
+ * <li>when the batch endpoint function returns an URI for the batch, as one request to that URI with JSON array of all
+ * the payloads as the body,</li>
+ * <li>otherwise each request is sent on its own, all of them at the same time over the client's connection.</li>
+ * </ul>
+ * Every submitted request gets its own future, completed when the request (or its batch) is sent.
+ */
+@Slf4j
+public class RequestBatcher implements AutoCloseable {
+
+    private final ScheduledExecutorService executor;
+    private final PNCHttpClient httpClient;
+    private final RequestBatcherConfig config;
+    private final Function<Request, URI> batchEndpoint;
+
+    private final Map<List<Object>, Batch> openBatches = new HashMap<>();
+    private int queued;
+    private boolean closed;
+
+    /**
+     * @param executor Executor used to send batches when their linger time passes.
+     * @param httpClient Client sending the requests and batches.
+     * @param config Batch size and timing.
+     * @param batchEndpoint Returns URI of the endpoint accepting the batch for the first request of the batch, or null
+     *        when the requests have to be sent on their own. Null function means no batch endpoints at all.
+     */
+    public RequestBatcher(
+            ScheduledExecutorService executor,
+            PNCHttpClient httpClient,
+            RequestBatcherConfig config,
+            Function<Request, URI> batchEndpoint) {
+        this.executor = executor;
+        this.httpClient = httpClient;
+        this.config = config;
+        this.batchEndpoint = batchEndpoint == null ? request -> null : batchEndpoint;
+    }
+
+    /**
+     * @see #submit(Request, Object)
+     */
+    public CompletableFuture<Void> submit(Request request) {
+        return submit(request, request.getAttachment());
+    }
+
+    /**
+     * Adds the request to a batch of requests to the same endpoint.
+     *
+     * @param request Request to be sent.
+     * @param payload Payload to be used instead of {@link Request#getAttachment()}
+     * @return Future completed when the request is sent, or completed exceptionally with {@link PNCHttpClientException}
+     *         when sending fails or too many requests are waiting
+     */
+    public CompletableFuture<Void> submit(Request request, Object payload) {
+        Pending pending = new Pending(request, payload);
+        Batch full = null;
+        synchronized (this) {
+            if (closed) {
+                pending.future.completeExceptionally(new PNCHttpClientException("Request batcher is closed."));
+                return pending.future;
+            }
+            if (queued >= config.maxQueuedRequests()) {
+                pending.future.completeExceptionally(
+                        new PNCHttpClientException("Too many requests (" + queued + ") are waiting to be batched."));
+                return pending.future;
+            }
+
+            List<Object> key = key(request);
+            Batch batch = openBatches.get(key);
+            if (batch == null) {
+                batch = new Batch();
+                openBatches.put(key, batch);
+                batch.lingerTask = executor
+                        .schedule(() -> sendWhenOpen(key), config.linger().toMillis(), TimeUnit.MILLISECONDS);
+            }
+            batch.requests.add(pending);
+            queued++;
+
+            if (batch.requests.size() >= config.maxBatchSize()) {
+                full = remove(key);
+            }
+        }
+        if (full != null) {
+            full.lingerTask.cancel(false);
+            send(full);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Sends all open batches immediately. Requests submitted afterwards fail.
+     */
+    @Override
+    public void close() {
+        List<Batch> batches;
+        synchronized (this) {
+            closed = true;
+            batches = new ArrayList<>(openBatches.size());
+            for (List<Object> key : new ArrayList<>(openBatches.keySet())) {
+                batches.add(remove(key));
+            }
+        }
+        for (Batch batch : batches) {
+            batch.lingerTask.cancel(false);
+            send(batch);
+        }
+    }
+
+    private static List<Object> key(Request request) {
+        List<Map.Entry<String, String>> headers = request.getHeaders()
+                .stream()
+                .map(header -> Map.entry(header.getName(), header.getValue()))
+                .collect(Collectors.toList());
+        return List.of(request.getMethod(), request.getUri(), headers);
+    }
+
+    private void sendWhenOpen(List<Object> key) {
+        Batch batch;
+        synchronized (this) {
+            batch = remove(key);
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    private Batch remove(List<Object> key) {
+        Batch batch = openBatches.remove(key);
+        if (batch != null) {
+            queued -= batch.requests.size();
+        }
+        return batch;
+    }
+
+    private void send(Batch batch) {
+        Request first = batch.requests.get(0).request;
+        URI endpoint = batch.requests.size() > 1 ? batchEndpoint.apply(first) : null;
+
+        if (endpoint == null) {
+            for (Pending pending : batch.requests) {
+                complete(httpClient.sendRequestAsync(pending.request, pending.payload), List.of(pending));
+            }
+            return;
+        }
+
+        log.debug("Sending batch of {} requests to {} as {}", batch.requests.size(), first.getUri(), endpoint);
+        var batchRequest = Request.builder().method(first.getMethod()).uri(endpoint);
+        first.getHeaders().forEach(header -> batchRequest.header(header.getName(), header.getValue()));
+        List<Object> payloads = batch.requests.stream().map(pending -> pending.payload).collect(Collectors.toList());
+
+        complete(httpClient.sendRequestAsync(batchRequest.build(), payloads), batch.requests);
+    }
+
+    private static void complete(CompletableFuture<Void> sent, List<Pending> requests) {
+        sent.whenComplete((ignored, error) -> {
+            for (Pending pending : requests) {
+                if (error == null) {
+                    pending.future.complete(null);
+                } else {
+                    pending.future.completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    private static class Batch {
+        private final List<Pending> requests = new ArrayList<>();
+        private ScheduledFuture<?> lingerTask;
+    }
+
+    private static class Pending {
+        private final Request request;
+        private final Object payload;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Pending(Request request, Object payload) {
+            this.request = request;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Configuration of {@link RequestBatcher}.
+ */
+public interface RequestBatcherConfig {
+
+    /**
+     * Max number of requests sent together, a batch reaching the size is sent immediately. Defaults to 100.
+     */
+    @WithDefault("100")
+    int maxBatchSize();
+
+    /**
+     * How long the first request of a batch waits for other requests to the same endpoint before the batch is sent.
+     * Defaults to 200 milliseconds.
+     */
+    @WithDefault("PT0.2s")
+    Duration linger();
+
+    /**
+     * Max number of requests waiting in all batches together. Requests submitted over the limit fail immediately.
+     * Defaults to 10000.
+     */
+    @WithDefault("10000")
+    int maxQueuedRequests();
+}
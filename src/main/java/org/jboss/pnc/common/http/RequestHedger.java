@@ -0,0 +1,255 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hedges requests to a host: when an attempt doesn't complete within the hedging delay, a second attempt is started
+ * and whichever completes first wins, the other one is cancelled. Meant for idempotent requests only, it cuts the tail
+ * latency caused by occasional slow replicas or connections.
+ *
+ * The delay is either fixed or the configured percentile of the recent response times of the host. Hedges are paid
+ * from a budget that every request adds a fraction of a hedge to, so when the whole host slows down hedging stops
+ * instead of multiplying the load. Safe to share between threads.
+ */
+public class RequestHedger {
+
+    /**
+     * Number of recent response times the delay is computed from.
+     */
+    private static final int WINDOW = 512;
+
+    /**
+     * Number of new response times after which the delay is recomputed.
+     */
+    private static final int RECOMPUTE_EVERY = 32;
+
+    /**
+     * The budget saved up while requests are fast allows at most this many hedges in a row.
+     */
+    private static final double MAX_BUDGET = 10;
+
+    private final String name;
+    private final ScheduledExecutorService scheduler;
+    private final boolean fixedDelay;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final double budgetPerRequest;
+
+    private final long[] samples = new long[WINDOW];
+    private int sampleCount;
+    private int nextSample;
+    private double budget = MAX_BUDGET;
+    private volatile long delayNanos;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder overBudget = new LongAdder();
+
+    public RequestHedger(
+            String name,
+            PNCHttpClientConfig.HedgingConfig config,
+            ScheduledExecutorService scheduler) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.fixedDelay = config.delay().compareTo(Duration.ZERO) > 0;
+        this.percentile = Math.min(1, Math.max(0, config.percentile()));
+        this.minDelayNanos = config.minDelay().toNanos();
+        this.budgetPerRequest = config.budget();
+        this.delayNanos = fixedDelay ? config.delay().toNanos() : minDelayNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return current hedging delay
+     */
+    public Duration getDelay() {
+        return Duration.ofNanos(delayNanos);
+    }
+
+    /**
+     * @return number of requests hedged by this hedger since it was created
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of hedge attempts started
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return number of hedge attempts that completed before the original attempt
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return number of hedge attempts not started because the budget was used up
+     */
+    public long getOverBudget() {
+        return overBudget.sum();
+    }
+
+    /**
+     * Starts an attempt and, if it doesn't complete within the hedging delay, another one.
+     *
+     * @param attempt starts an attempt, must not block
+     * @param discard called with the result of an attempt completed after the other one won, to release its resources
+     * @return future completed with the first successful result; or with the error when all started attempts failed.
+     *         Cancelling it cancels all attempts.
+     */
+    public <R> CompletableFuture<R> hedge(Supplier<CompletableFuture<R>> attempt, Consumer<? super R> discard) {
+        requests.increment();
+        synchronized (this) {
+            budget = Math.min(MAX_BUDGET, budget + budgetPerRequest);
+        }
+
+        Hedge<R> hedge = new Hedge<>(discard);
+        hedge.start(attempt, false);
+        if (!hedge.result.isDone()) {
+            ScheduledFuture<?> timer = scheduler.schedule(() -> {
+                if (!hedge.result.isDone()) {
+                    if (tryTakeBudget()) {
+                        hedges.increment();
+                        hedge.start(attempt, true);
+                    } else {
+                        overBudget.increment();
+                    }
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+            hedge.result.whenComplete((result, error) -> timer.cancel(false));
+        }
+        return hedge.result;
+    }
+
+    private synchronized boolean tryTakeBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+
+    private void recordLatency(long nanos) {
+        if (fixedDelay) {
+            return;
+        }
+        long[] window = null;
+        synchronized (this) {
+            samples[nextSample] = nanos;
+            nextSample = (nextSample + 1) % WINDOW;
+            sampleCount++;
+            if (sampleCount % RECOMPUTE_EVERY == 0) {
+                window = Arrays.copyOf(samples, Math.min(sampleCount, WINDOW));
+            }
+        }
+        if (window != null) {
+            // sort outside of the lock, a concurrent recomputation can only make the delay slightly older
+            Arrays.sort(window);
+            int index = (int) Math.ceil(percentile * window.length) - 1;
+            delayNanos = Math.max(minDelayNanos, window[Math.max(0, index)]);
+        }
+    }
+
+    private class Hedge<R> {
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private final Consumer<? super R> discard;
+        private final List<CompletableFuture<R>> attempts = new ArrayList<>(2);
+        private int failed;
+        private Throwable firstError;
+
+        Hedge(Consumer<? super R> discard) {
+            this.discard = discard;
+            result.whenComplete((value, error) -> cancelAll());
+        }
+
+        void start(Supplier<CompletableFuture<R>> attempt, boolean hedged) {
+            long start = System.nanoTime();
+            CompletableFuture<R> future;
+            try {
+                future = attempt.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            synchronized (this) {
+                attempts.add(future);
+            }
+            if (result.isDone()) {
+                // the other attempt won while this one was starting
+                future.cancel(true);
+            }
+            future.whenComplete((value, error) -> completed(value, error, hedged, System.nanoTime() - start));
+        }
+
+        private void completed(R value, Throwable error, boolean hedged, long nanos) {
+            if (error == null) {
+                if (result.complete(value)) {
+                    recordLatency(nanos);
+                    if (hedged) {
+                        hedgeWins.increment();
+                    }
+                } else {
+                    discard.accept(value);
+                }
+                return;
+            }
+            boolean allFailed;
+            synchronized (this) {
+                failed++;
+                if (firstError == null) {
+                    firstError = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                            : error;
+                }
+                // a hedge not started yet won't be, the failure is left to the caller (e.g. to retry)
+                allFailed = failed == attempts.size();
+            }
+            if (allFailed) {
+                result.completeExceptionally(firstError);
+            }
+        }
+
+        private void cancelAll() {
+            List<CompletableFuture<R>> started;
+            synchronized (this) {
+                started = List.copyOf(attempts);
+            }
+            started.forEach(attempt -> attempt.cancel(true));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the retries to a host to a fraction of its successful requests, so during an outage the retries of many
+ * concurrent requests can't multiply the load on the host once it comes back. Every successful request adds the
+ * configured ratio of a retry to the budget and every retry takes a whole one; a small reserve refilled over time lets
+ * requests retry when there are no successes to pay for them. The budget saves up at most the burst of retries.
+ *
+ * A request that can't retry fails with {@link RetryBudgetExhaustedException}. Safe to share between threads.
+ */
+public class RetryBudget {
+
+    private final String name;
+    private final double ratio;
+    private final double minRetriesPerNano;
+    private final double burst;
+    private final LongSupplier nanoTime;
+
+    private double balance;
+    private long lastRefill;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public RetryBudget(String name, PNCHttpClientConfig.RetryBudgetConfig config) {
+        this(name, config, System::nanoTime);
+    }
+
+    RetryBudget(String name, PNCHttpClientConfig.RetryBudgetConfig config, LongSupplier nanoTime) {
+        this.name = name;
+        this.ratio = config.ratio();
+        this.minRetriesPerNano = config.minRetriesPerSecond() / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, config.burst());
+        this.nanoTime = nanoTime;
+        this.balance = burst;
+        this.lastRefill = nanoTime.getAsLong();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of whole retries currently available
+     */
+    public synchronized int getBalance() {
+        refill();
+        return (int) balance;
+    }
+
+    /**
+     * @return number of retries let through since the budget was created
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return number of retries rejected since the budget was created
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Adds the ratio of a retry to the budget.
+     */
+    public synchronized void recordSuccess() {
+        refill();
+        balance = Math.min(burst, balance + ratio);
+    }
+
+    /**
+     * Takes a retry from the budget.
+     *
+     * @return true if the request may retry
+     */
+    public boolean tryRetry() {
+        boolean allowed;
+        synchronized (this) {
+            refill();
+            allowed = balance >= 1;
+            if (allowed) {
+                balance--;
+            }
+        }
+        (allowed ? retries : rejections).increment();
+        return allowed;
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        balance = Math.min(burst, balance + (now - lastRefill) * minRetriesPerNano);
+        lastRefill = now;
+    }
+}
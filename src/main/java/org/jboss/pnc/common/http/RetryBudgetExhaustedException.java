@@ -0,0 +1,29 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+/**
+ * Thrown instead of retrying a request when the {@link RetryBudget} of the host is used up, the cause is the failure of
+ * the last attempt.
+ */
+public class RetryBudgetExhaustedException extends PNCHttpClientException {
+
+    public RetryBudgetExhaustedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
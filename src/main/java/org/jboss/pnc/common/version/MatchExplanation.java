@@ -0,0 +1,35 @@
+package org.jboss.pnc.common.version;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Result of {@link VersionAnalyzer#explainBiggestMatchingVersion}.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class MatchExplanation {
+
+    /**
+     * Chosen version, null when no version matched.
+     */
+    private final String version;
+
+    /**
+     * Amount of versions the ranks chose from, after filtering by query, allow/deny lists and suffix.
+     */
+    private final int candidates;
+
+    /**
+     * Index of the rank that chose the version, -1 when there was nothing to choose from or when no rank could tell
+     * the best candidates apart.
+     */
+    private final int decidingRank;
+
+    /**
+     * The deciding rank as it was written, null when {@link #decidingRank} is -1.
+     */
+    private final String decidingRankExpression;
+}
@@ -18,9 +18,12 @@ package org.jboss.pnc.common.version;
 import org.jboss.pnc.api.constants.versions.VersionDistanceRule;
 import org.jboss.pnc.api.constants.versions.VersionFilter;
 import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.common.alignment.ranking.AlignmentRanking;
+import org.jboss.pnc.common.alignment.ranking.VersionIndex;
 import org.jboss.pnc.common.alignment.ranking.VersionStrategy;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -112,17 +115,72 @@ public class VersionAnalyzer {
     }
 
     public Optional<String> findBiggestMatchingVersion(String query, Collection<QualifiedVersion> versions) {
+        return findCandidates(query, versions).stream()
+                .map(SuffixedVersion::getOriginalVersionWithMeta)
+                .max(strategies.getRanks())
+                .map(QualifiedVersion::getVersion);
+    }
+
+    /**
+     * Same as {@link #findBiggestMatchingVersion(String, Collection)} for versions kept in an index. Allow and deny lists
+     * are answered by the index, so versions they filter out are never parsed or compared.
+     */
+    public Optional<String> findBiggestMatchingVersion(String query, VersionIndex index) {
+        return findCandidates(query, index).stream()
+                .map(SuffixedVersion::getOriginalVersionWithMeta)
+                .max(strategies.getRanks())
+                .map(QualifiedVersion::getVersion);
+    }
+
+    /**
+     * Same as {@link #findBiggestMatchingVersion(String, Collection)}, but also reports how the version was chosen.
+     * Meant for troubleshooting strategies, it compares the winner with every other candidate once more.
+     */
+    public MatchExplanation explainBiggestMatchingVersion(String query, Collection<QualifiedVersion> versions) {
+        List<QualifiedVersion> candidates = findCandidates(query, versions).stream()
+                .map(SuffixedVersion::getOriginalVersionWithMeta)
+                .collect(Collectors.toList());
+        AlignmentRanking ranks = strategies.getRanks();
+
+        Optional<QualifiedVersion> winner = candidates.stream().max(ranks);
+        if (winner.isEmpty()) {
+            return new MatchExplanation(null, 0, -1, null);
+        }
+
+        // the winner beats every candidate by some rank, the last of these ranks was needed to pick it
+        int decidingRank = -1;
+        for (QualifiedVersion candidate : candidates) {
+            if (candidate != winner.get()) {
+                decidingRank = Math.max(decidingRank, ranks.decidingRank(winner.get(), candidate));
+            }
+        }
+        return new MatchExplanation(
+                winner.get().getVersion(),
+                candidates.size(),
+                decidingRank,
+                decidingRank < 0 ? null : ranks.getRanks().get(decidingRank));
+    }
+
+    private List<SuffixedVersion> findCandidates(String query, Collection<QualifiedVersion> versions) {
+        return findCandidates(query, new VersionIndex(versions));
+    }
+
+    private List<SuffixedVersion> findCandidates(String query, VersionIndex index) {
         String unsuffixedQuery = versionParser.parse(query).unsuffixedVersion();
 
+        // apply strategy filters earlier because they might filter out an entire suffix
+        // lists are answered by the index, only versions passing them are parsed
+        BitSet allowed = index.select(strategies.getAllowList(), strategies.getDenyList());
+
         // IF QUERY==2.3.4.REDHAT-00001 then FILTER ALL versions in 'versions' to have 2.3.4
-        List<SuffixedVersion> candidateSuffixedVersions = versions.stream()
-                .map(versionParser::parseSuffixed)
-                .flatMap(Set::stream)
-                // apply strategy filters earlier because they might filter out an entire suffix
-                .filter(sv -> strategies.getAllowList().test(sv.getOriginalVersionWithMeta()))
-                .filter(sv -> strategies.getDenyList().negate().test(sv.getOriginalVersionWithMeta()))
-                .filter(v -> unsuffixedQuery.equals(v.unsuffixedVersion()))
-                .collect(Collectors.toList());
+        List<SuffixedVersion> candidateSuffixedVersions = new ArrayList<>();
+        for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+            for (SuffixedVersion suffixedVersion : versionParser.parseSuffixed(index.get(i))) {
+                if (unsuffixedQuery.equals(suffixedVersion.unsuffixedVersion())) {
+                    candidateSuffixedVersions.add(suffixedVersion);
+                }
+            }
+        }
 
         List<SuffixedVersion> versionsToSearch = Collections.emptyList();
         for (String suffix : suffixes) {
@@ -134,10 +192,7 @@ public class VersionAnalyzer {
             }
         }
 
-        return versionsToSearch.stream()
-                .map(SuffixedVersion::getOriginalVersionWithMeta)
-                .max(strategies.getRanks())
-                .map(QualifiedVersion::getVersion);
+        return versionsToSearch;
     }
 
     private int compareByBuildNumber(String first, String second) {
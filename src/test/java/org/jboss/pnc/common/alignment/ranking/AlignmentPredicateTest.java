@@ -0,0 +1,136 @@
+package org.jboss.pnc.common.alignment.ranking;
+
+import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.api.enums.Qualifier;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AlignmentPredicateTest {
+
+    @Test
+    public void testMixedQualifiers() {
+        AlignmentPredicate predicate = new AlignmentPredicate("PRODUCT:EAP, QUALITY:TESTED, PRODUCT:RHSSO");
+
+        assertTrue(predicate.test(version(Map.of(Qualifier.PRODUCT, Set.of("EAP")))));
+        assertTrue(predicate.test(version(Map.of(Qualifier.PRODUCT, Set.of("RHSSO")))));
+        assertTrue(predicate.test(version(Map.of(Qualifier.QUALITY, Set.of("TESTED")))));
+        assertTrue(predicate.test(version(Map.of(Qualifier.PRODUCT, Set.of("FOO", "RHSSO")))));
+        assertFalse(predicate.test(version(Map.of(Qualifier.PRODUCT, Set.of("FOO")))));
+        assertFalse(predicate.test(version(Map.of(Qualifier.QUALITY, Set.of("RELEASED")))));
+        assertFalse(predicate.test(version(Map.of())));
+    }
+
+    @Test
+    public void testHugeList() {
+        int terms = 100_000;
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            query.append("PRODUCT:P").append(i).append(", ");
+        }
+        query.append("QUALITY:RELEASED");
+
+        AlignmentPredicate predicate = new AlignmentPredicate(query.toString());
+
+        assertTrue(predicate.test(version(Map.of(Qualifier.PRODUCT, Set.of("P0")))));
+        assertTrue(predicate.test(version(Map.of(Qualifier.PRODUCT, Set.of("P" + (terms - 1))))));
+        assertTrue(predicate.test(version(Map.of(Qualifier.QUALITY, Set.of("RELEASED")))));
+        assertFalse(predicate.test(version(Map.of(Qualifier.PRODUCT, Set.of("P" + terms)))));
+        assertFalse(predicate.test(version(Map.of(Qualifier.QUALITY, Set.of("TESTED")))));
+    }
+
+    @Test
+    public void testAdaptiveOrderingKeepsResults() {
+        AlignmentPredicate predicate = new AlignmentPredicate("PRODUCT:EAP, QUALITY:TESTED, PRODUCT:RHSSO, PRODUCT:EAP");
+        List<QualifiedVersion> versions = List.of(
+                version(Map.of()),
+                version(Map.of(Qualifier.PRODUCT, Set.of("EAP"))),
+                version(Map.of(Qualifier.PRODUCT, Set.of("FOO"))),
+                version(Map.of(Qualifier.QUALITY, Set.of("TESTED"))),
+                version(Map.of(Qualifier.QUALITY, Set.of("RELEASED"), Qualifier.PRODUCT, Set.of("RHSSO"))));
+        List<Boolean> expected = versions.stream().map(predicate::test).collect(Collectors.toList());
+
+        predicate.enableAdaptiveOrdering();
+        for (int i = 0; i < 200; i++) {
+            versions.forEach(predicate::test);
+        }
+        predicate.reoptimize();
+
+        assertEquals(expected, versions.stream().map(predicate::test).collect(Collectors.toList()));
+        assertEquals(List.of(false, true, false, true, true), expected);
+    }
+
+    @Test
+    public void testAllMatchesSingleTests() {
+        List<QualifiedVersion> candidates = List.of(
+                version(Map.of()),
+                version(Map.of(Qualifier.PRODUCT, Set.of("EAP"))),
+                version(Map.of(Qualifier.PRODUCT, Set.of("FOO", "RHSSO"))),
+                version(Map.of(Qualifier.PRODUCT, Set.of("FOO"))),
+                version(Map.of(Qualifier.QUALITY, Set.of("TESTED"))),
+                version(Map.of(Qualifier.QUALITY, Set.of("RELEASED"))));
+
+        for (String query : Arrays.asList("PRODUCT:EAP, QUALITY:TESTED, PRODUCT:RHSSO", "QUALITY:RELEASED", null)) {
+            AlignmentPredicate predicate = new AlignmentPredicate(query, ver -> false);
+
+            BitSet expected = new BitSet();
+            for (int i = 0; i < candidates.size(); i++) {
+                expected.set(i, predicate.test(candidates.get(i)));
+            }
+            assertEquals(expected, predicate.testAll(candidates), "Query: " + query);
+        }
+    }
+
+    @Test
+    public void testExpression() {
+        AlignmentPredicate predicate = new AlignmentPredicate("PRODUCT:EAP, QUALITY:TESTED, PRODUCT:RHSSO");
+
+        Expression expression = predicate.getExpression();
+
+        assertTrue(expression instanceof Expression.Or);
+        assertEquals(
+                Set.of(
+                        new Expression.Term(Qualifier.PRODUCT, Set.of("EAP", "RHSSO")),
+                        new Expression.Term(Qualifier.QUALITY, Set.of("TESTED"))),
+                Set.copyOf(((Expression.Or) expression).getOperands()));
+        assertNull(new AlignmentPredicate(null).getExpression());
+    }
+
+    @Test
+    public void testIndexSelect() {
+        VersionIndex index = new VersionIndex(
+                List.of(
+                        version(Map.of(Qualifier.PRODUCT, Set.of("EAP"))),
+                        version(Map.of(Qualifier.PRODUCT, Set.of("EAP"), Qualifier.QUALITY, Set.of("DELETED"))),
+                        version(Map.of(Qualifier.PRODUCT, Set.of("RHSSO"))),
+                        version(Map.of())));
+        AlignmentPredicate allowList = new AlignmentPredicate("PRODUCT:EAP, PRODUCT:RHSSO");
+        AlignmentPredicate denyList = new AlignmentPredicate("QUALITY:DELETED", ver -> false);
+
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        assertEquals(expected, index.select(allowList, denyList));
+        assertEquals(expected, index.select(allowList, denyList), "Index is reusable");
+
+        BitSet everything = new BitSet();
+        everything.set(0, 4);
+        AlignmentPredicate allowAll = new AlignmentPredicate(null, ver -> true);
+        AlignmentPredicate denyNone = new AlignmentPredicate(null, ver -> false);
+        assertEquals(everything, index.select(allowAll, denyNone));
+    }
+
+    private static QualifiedVersion version(Map<Qualifier, Set<String>> qualifiers) {
+        return new QualifiedVersion("1.0.0.redhat-1", qualifiers);
+    }
+}
@@ -0,0 +1,88 @@
+package org.jboss.pnc.common.alignment.ranking;
+
+import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.api.enums.Qualifier;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AlignmentRankingTest {
+
+    private static final QualifiedVersion NONE = version(Map.of());
+    private static final QualifiedVersion EAP = version(Map.of(Qualifier.PRODUCT, Set.of("EAP")));
+    private static final QualifiedVersion RELEASED = version(Map.of(Qualifier.QUALITY, Set.of("RELEASED")));
+    private static final QualifiedVersion RELEASED_EAP = version(
+            Map.of(Qualifier.QUALITY, Set.of("RELEASED"), Qualifier.PRODUCT, Set.of("EAP")));
+
+    @Test
+    public void testRedundantOperandsDoNotChangeResult() {
+        // "PRODUCT:EAP AND (PRODUCT:EAP OR QUALITY:RELEASED) AND PRODUCT:EAP" is just "PRODUCT:EAP"
+        AlignmentRanking redundant = new AlignmentRanking(
+                List.of("PRODUCT:EAP AND (PRODUCT:EAP OR QUALITY:RELEASED) AND PRODUCT:EAP"),
+                Comparator.naturalOrder());
+        AlignmentRanking simple = new AlignmentRanking(List.of("PRODUCT:EAP"), Comparator.naturalOrder());
+
+        List<QualifiedVersion> versions = List.of(NONE, EAP, RELEASED, RELEASED_EAP);
+        for (QualifiedVersion first : versions) {
+            for (QualifiedVersion second : versions) {
+                assertEquals(simple.compare(first, second), redundant.compare(first, second));
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveOrderingKeepsResults() {
+        AlignmentRanking ranking = new AlignmentRanking(
+                List.of("(QUALITY:RELEASED AND PRODUCT:EAP) OR QUALITY:TESTED", "PRODUCT:EAP OR QUALITY:RELEASED"),
+                Comparator.naturalOrder());
+        List<QualifiedVersion> versions = List.of(NONE, EAP, RELEASED, RELEASED_EAP);
+        int[][] expected = compareAll(ranking, versions);
+
+        ranking.enableAdaptiveOrdering();
+        for (int i = 0; i < 100; i++) {
+            compareAll(ranking, versions);
+        }
+        ranking.reoptimize();
+
+        assertArrayEquals(expected, compareAll(ranking, versions));
+    }
+
+    @Test
+    public void testAdaptiveOrderingCountsEveryRank() {
+        AlignmentRanking ranking = new AlignmentRanking(
+                List.of("PRODUCT:EAP OR QUALITY:RELEASED", "QUALITY:RELEASED AND PRODUCT:EAP"),
+                Comparator.naturalOrder());
+        List<QualifiedVersion> versions = List.of(NONE, EAP, RELEASED, RELEASED_EAP);
+
+        ranking.enableAdaptiveOrdering();
+        compareAll(ranking, versions);
+        long evaluations = ranking.getStatistics().getEvaluations();
+        assertTrue(evaluations > 0);
+
+        // recompiling with another comparator must keep the operands registered
+        ranking.overrideVersionComparator(Comparator.reverseOrder());
+        compareAll(ranking, versions);
+        assertTrue(ranking.getStatistics().getEvaluations() > evaluations);
+    }
+
+    private static int[][] compareAll(AlignmentRanking ranking, List<QualifiedVersion> versions) {
+        int[][] results = new int[versions.size()][versions.size()];
+        for (int i = 0; i < versions.size(); i++) {
+            for (int j = 0; j < versions.size(); j++) {
+                results[i][j] = ranking.compare(versions.get(i), versions.get(j));
+            }
+        }
+        return results;
+    }
+
+    private static QualifiedVersion version(Map<Qualifier, Set<String>> qualifiers) {
+        return new QualifiedVersion("1.0.0.redhat-1", qualifiers);
+    }
+}
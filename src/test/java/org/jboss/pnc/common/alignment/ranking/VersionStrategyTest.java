@@ -0,0 +1,160 @@
+package org.jboss.pnc.common.alignment.ranking;
+
+import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
+import org.jboss.pnc.api.enums.Qualifier;
+import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VersionStrategyTest {
+
+    private static final List<QualifiedVersion> VERSIONS = List.of(
+            version("1.0.0.redhat-1", Map.of()),
+            version("1.0.0.redhat-2", Map.of(Qualifier.PRODUCT, Set.of("EAP"))),
+            version("1.0.0.redhat-3", Map.of(Qualifier.QUALITY, Set.of("RELEASED"))),
+            version("1.0.0.redhat-4", Map.of(Qualifier.QUALITY, Set.of("DELETED"))),
+            version(
+                    "1.0.0.redhat-5",
+                    Map.of(Qualifier.QUALITY, Set.of("RELEASED"), Qualifier.PRODUCT, Set.of("EAP", "RHSSO"))));
+
+    @Test
+    public void testPrecompiledStrategyBehavesTheSame() {
+        VersionStrategy strategy = VersionStrategy.from(
+                List.of("(PRODUCT:EAP OR QUALITY:TESTED) AND QUALITY:RELEASED", "PRODUCT:EAP", "SUFFIX-VERSION"),
+                "PRODUCT:EAP, QUALITY:RELEASED",
+                "QUALITY:DELETED");
+        byte[] precompiled = strategy.precompile();
+
+        VersionStrategy loaded = VersionStrategy.fromPrecompiled(precompiled);
+
+        assertArrayEquals(precompiled, loaded.precompile());
+        assertEquals(strategy.getRanks().getRanks(), loaded.getRanks().getRanks());
+        strategy.getRanks().overrideVersionComparator(Comparator.naturalOrder());
+        loaded.getRanks().overrideVersionComparator(Comparator.naturalOrder());
+        for (QualifiedVersion first : VERSIONS) {
+            assertEquals(strategy.getAllowList().test(first), loaded.getAllowList().test(first));
+            assertEquals(strategy.getDenyList().test(first), loaded.getDenyList().test(first));
+            for (QualifiedVersion second : VERSIONS) {
+                assertEquals(
+                        strategy.getRanks().compare(first, second),
+                        loaded.getRanks().compare(first, second));
+            }
+        }
+    }
+
+    @Test
+    public void testPrecompiledStrategyWithEmptyLists() {
+        VersionStrategy loaded = VersionStrategy
+                .fromPrecompiled(VersionStrategy.from(List.of("PRODUCT:EAP"), null, null).precompile());
+
+        assertEquals(true, loaded.getAllowList().isEmpty());
+        assertEquals(true, loaded.getDenyList().isEmpty());
+        assertEquals(true, loaded.getAllowList().test(VERSIONS.get(0)));
+        assertEquals(false, loaded.getDenyList().test(VERSIONS.get(0)));
+    }
+
+    @Test
+    public void testCorruptedPrecompiledStrategyIsRejected() {
+        byte[] precompiled = VersionStrategy.from(List.of("PRODUCT:EAP"), "QUALITY:RELEASED", null).precompile();
+
+        byte[] corrupted = precompiled.clone();
+        corrupted[corrupted.length / 2] ^= 1;
+        assertThrows(ValidationException.class, () -> VersionStrategy.fromPrecompiled(corrupted));
+
+        byte[] truncated = Arrays.copyOf(precompiled, precompiled.length - 1);
+        assertThrows(ValidationException.class, () -> VersionStrategy.fromPrecompiled(truncated));
+    }
+    @Test
+    public void testPrecompiledTokensOutOfSyntaxAreRejected() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeVarInt(body, 1);
+        writeString(body, "PRODUCT:EAP AND");
+        writeVarInt(body, 2);
+        writeVarInt(body, 0);
+        writeString(body, "QVALUE");
+        writeVarInt(body, 0);
+        writeVarInt(body, 11);
+        writeVarInt(body, 0);
+        writeString(body, "PRODUCT");
+        writeVarInt(body, 1);
+        writeString(body, "EAP");
+        // dangling AND, valid tokens but not a valid expression
+        writeVarInt(body, 0);
+        writeString(body, "LOGIC");
+        writeVarInt(body, 1);
+        writeVarInt(body, 3);
+        writeVarInt(body, 0);
+        writeString(body, "AND");
+
+        assertThrows(ValidationException.class, () -> VersionStrategy.fromPrecompiled(frame(body.toByteArray())));
+    }
+
+    @Test
+    public void testPrecompiledCountLargerThanDataIsRejected() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeVarInt(body, 1);
+        writeString(body, "PRODUCT:EAP");
+        writeVarInt(body, 1);
+        writeVarInt(body, 0);
+        writeString(body, "QVALUE");
+        writeVarInt(body, 0);
+        writeVarInt(body, 11);
+        writeVarInt(body, 0);
+        writeString(body, "PRODUCT");
+        // a million parts, only one follows
+        writeVarInt(body, 1_000_000);
+        writeString(body, "EAP");
+
+        ValidationException exception = assertThrows(
+                ValidationException.class,
+                () -> VersionStrategy.fromPrecompiled(frame(body.toByteArray())));
+        assertTrue(exception.getMessage().contains("exceeds"));
+    }
+
+    private static byte[] frame(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(PrecompiledStrategy.MAGIC);
+        out.writeByte(PrecompiledStrategy.FORMAT_VERSION);
+        writeVarInt(bytes, body.length);
+        out.write(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        out.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    private static QualifiedVersion version(String version, Map<Qualifier, Set<String>> qualifiers) {
+        return new QualifiedVersion(version, qualifiers);
+    }
+}
@@ -0,0 +1,79 @@
+package org.jboss.pnc.common.alignment.ranking.tokenizer;
+
+import org.jboss.pnc.api.enums.Qualifier;
+import org.jboss.pnc.common.alignment.ranking.Logic;
+import org.jboss.pnc.common.alignment.ranking.exception.ValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GenericTokenizerTest {
+
+    @Test
+    public void testTokens() {
+        List<Token> tokens = tokenize("(product : EAP and version:'1  2 ') sort-by suffix-version", null);
+
+        assertEquals(7, tokens.size());
+        assertEquals(TokenType.LPAREN, tokens.get(0).tokenType);
+
+        QualifierToken product = (QualifierToken) tokens.get(1);
+        assertEquals(Qualifier.PRODUCT, product.qualifier);
+        assertArrayEquals(new String[] { "EAP" }, product.parts);
+        assertEquals(1, product.pos);
+        assertEquals(14, product.endPos);
+
+        assertEquals(Logic.AND, ((LogicToken) tokens.get(2)).logicType);
+
+        QualifierToken version = (QualifierToken) tokens.get(3);
+        assertEquals(Qualifier.VERSION, version.qualifier);
+        assertArrayEquals(new String[] { "1", "2" }, version.parts);
+
+        assertEquals(TokenType.RPAREN, tokens.get(4).tokenType);
+        assertEquals(TokenType.SORT_BY, tokens.get(5).tokenType);
+        assertEquals(TokenType.ORDER, tokens.get(6).tokenType);
+    }
+
+    @Test
+    public void testAllowedTokensChangeWordBoundaries() {
+        Set<TokenType> allowed = EnumSet.of(TokenType.QVALUE, TokenType.COMMA);
+
+        assertEquals(2, tokenize("PRODUCT:EAP, QUALITY:RELEASED", allowed).stream()
+                .filter(token -> token.tokenType == TokenType.QVALUE)
+                .count());
+        // ':' is an ordinary character once QVALUE is not allowed
+        ValidationException exception = assertThrows(
+                ValidationException.class,
+                () -> tokenize("PRODUCT:EAP", EnumSet.of(TokenType.COMMA)));
+        assertTrue(exception.getMessage().contains("'PRODUCT:EAP'"));
+    }
+
+    @Test
+    public void testBlacklistedCharacter() {
+        ValidationException exception = assertThrows(
+                ValidationException.class,
+                () -> tokenize("PRODUCT:EAP;", EnumSet.allOf(TokenType.class), Set.of(';')));
+
+        assertTrue(exception.getMessage().contains("(char 12)"));
+    }
+
+    private static List<Token> tokenize(String input, Set<TokenType> allowed) {
+        return tokenize(input, allowed == null ? EnumSet.allOf(TokenType.class) : allowed, Set.of());
+    }
+
+    private static List<Token> tokenize(String input, Set<TokenType> allowed, Set<Character> blacklisted) {
+        Tokenizer tokenizer = new GenericTokenizer(input, allowed, blacklisted);
+        List<Token> tokens = new ArrayList<>();
+        while (tokenizer.hasNext()) {
+            tokens.add(tokenizer.next());
+        }
+        return tokens;
+    }
+}
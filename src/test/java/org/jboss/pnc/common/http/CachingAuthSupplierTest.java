@@ -0,0 +1,159 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class CachingAuthSupplierTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final MutableClock clock = new MutableClock();
+    private final AtomicInteger fetched = new AtomicInteger();
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void credentialIsCachedUntilItExpires() {
+        CachingAuthSupplier supplier = supplier(this::fetch);
+
+        Assertions.assertThat(supplier.get()).isEqualTo("token-1");
+        clock.advance(Duration.ofMinutes(4));
+        Assertions.assertThat(supplier.get()).isEqualTo("token-1");
+        Assertions.assertThat(supplier.getFetches()).isEqualTo(1);
+
+        clock.advance(Duration.ofMinutes(2));
+        Assertions.assertThat(supplier.get()).isEqualTo("token-2");
+        Assertions.assertThat(supplier.getFetches()).isEqualTo(2);
+    }
+
+    @Test
+    public void credentialIsRefreshedInBackgroundBeforeExpiry() throws Exception {
+        CachingAuthSupplier supplier = supplier(this::fetch);
+        supplier.get();
+
+        clock.advance(Duration.ofSeconds(4 * 60 + 45));
+        Assertions.assertThat(supplier.get()).isEqualTo("token-1");
+        for (int i = 0; i < 100 && supplier.getFetches() < 2; i++) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertThat(supplier.get()).isEqualTo("token-2");
+    }
+
+    @Test
+    public void concurrentRefreshesCollapseIntoOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CachingAuthSupplier supplier = supplier(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return fetch();
+        });
+
+        List<CompletableFuture<String>> callers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            callers.add(CompletableFuture.supplyAsync(supplier::get));
+        }
+        Thread.sleep(50);
+        release.countDown();
+
+        for (CompletableFuture<String> caller : callers) {
+            Assertions.assertThat(caller.get()).isEqualTo("token-1");
+        }
+        Assertions.assertThat(fetched.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void onlyTheCurrentCredentialIsInvalidated() {
+        CachingAuthSupplier supplier = supplier(this::fetch);
+        supplier.get();
+
+        Assertions.assertThat(supplier.invalidate("token-0")).isFalse();
+        Assertions.assertThat(supplier.invalidate("token-1")).isTrue();
+        Assertions.assertThat(supplier.get()).isEqualTo("token-2");
+        Assertions.assertThat(supplier.getInvalidations()).isEqualTo(1);
+    }
+
+    @Test
+    public void jwtExpiryIsReadFromClaims() {
+        String claims = Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString("{\"sub\":\"pnc\",\"exp\":1704067500}".getBytes(StandardCharsets.UTF_8));
+
+        CachingAuthSupplier.Credential credential = CachingAuthSupplier.Credential
+                .ofJwt("Bearer eyJhbGciOiJub25lIn0." + claims + ".");
+
+        Assertions.assertThat(credential.getExpiresAt()).isEqualTo(Instant.parse("2024-01-01T00:05:00Z"));
+    }
+
+    private CachingAuthSupplier supplier(Supplier<CachingAuthSupplier.Credential> fetcher) {
+        return new CachingAuthSupplier(fetcher, Duration.ofSeconds(30), scheduler, clock);
+    }
+
+    private CachingAuthSupplier.Credential fetch() {
+        return new CachingAuthSupplier.Credential(
+                "token-" + fetched.incrementAndGet(),
+                clock.instant().plus(Duration.ofMinutes(5)));
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void limitGrowsOnSuccessAndShrinksOnDrop() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("host", new PNCHttpClientTest.TestConcurrencyLimitConfig());
+
+        ConcurrencyLimiter.Permit first = limiter.acquire();
+        ConcurrencyLimiter.Permit second = limiter.acquire();
+        Assertions.assertThat(limiter.getInFlight()).isEqualTo(2);
+        first.onResponse(200);
+        second.onResponse(200);
+        Assertions.assertThat(limiter.getLimit()).isEqualTo(3);
+        Assertions.assertThat(limiter.getInFlight()).isEqualTo(0);
+
+        limiter.acquire().onResponse(503);
+        Assertions.assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    public void requestOverLimitIsRejected() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("host", new PNCHttpClientTest.TestConcurrencyLimitConfig());
+        limiter.acquire();
+        limiter.acquire();
+
+        Assertions.assertThatThrownBy(limiter::acquire)
+                .isInstanceOf(PNCHttpClientException.class)
+                .hasMessageContaining("Too many concurrent requests to host");
+        Assertions.assertThat(limiter.getRejections()).isEqualTo(1);
+    }
+
+    @Test
+    public void waitingRequestGetsReleasedSlot() {
+        PNCHttpClientTest.TestConcurrencyLimitConfig config = new PNCHttpClientTest.TestConcurrencyLimitConfig();
+        config.maxWait = Duration.ofMinutes(1);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("host", config);
+        ConcurrencyLimiter.Permit first = limiter.acquire();
+        limiter.acquire();
+
+        CompletableFuture<ConcurrencyLimiter.Permit> waiting = limiter.acquireAsync();
+        Assertions.assertThat(waiting).isNotDone();
+        Assertions.assertThat(limiter.getWaiting()).isEqualTo(1);
+
+        first.ignore();
+        Assertions.assertThat(waiting).isCompleted();
+        Assertions.assertThat(limiter.getInFlight()).isEqualTo(2);
+        Assertions.assertThat(limiter.getRejections()).isZero();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import io.opentelemetry.api.metrics.Meter;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpClientMetricsTest {
+
+    @Test
+    public void setMetrics_replacedOrDisabled_stopsObservingClient() {
+        CountingMeter meter = new CountingMeter();
+        HttpClientMetrics metrics = new HttpClientMetrics(meter.proxy(Meter.class));
+        PNCHttpClient client = new PNCHttpClient(PNCHttpClientTest.CONFIG);
+
+        client.setMetrics(metrics);
+        int observed = meter.open.get();
+        Assertions.assertThat(observed).isPositive();
+
+        client.setMetrics(metrics);
+        Assertions.assertThat(meter.open.get()).isEqualTo(observed);
+
+        client.setMetrics(null);
+        Assertions.assertThat(meter.open.get()).isZero();
+
+        metrics.close();
+        Assertions.assertThat(meter.open.get()).isZero();
+    }
+
+    @Test
+    public void observeCache_closed_stopsObservingCache() {
+        CountingMeter meter = new CountingMeter();
+        HttpClientMetrics metrics = new HttpClientMetrics(meter.proxy(Meter.class));
+
+        HttpClientMetrics.Observation observation = metrics.observe(new HttpResponseCache(1000));
+        Assertions.assertThat(meter.open.get()).isPositive();
+
+        observation.close();
+        observation.close();
+        Assertions.assertThat(meter.open.get()).isZero();
+    }
+
+    /**
+     * Meter whose builders build no-op instruments, counting the observable ones that are not closed.
+     */
+    private static final class CountingMeter implements InvocationHandler {
+        private final AtomicInteger open = new AtomicInteger();
+
+        private <T> T proxy(Class<T> type) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CountingMeter proxy";
+                case "buildWithCallback":
+                    open.incrementAndGet();
+                    break;
+                case "close":
+                    open.decrementAndGet();
+                    break;
+                default:
+                    break;
+            }
+            Class<?> returnType = method.getReturnType();
+            return returnType.isInterface() ? proxy(returnType) : null;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+public class HttpResponseCacheTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final HttpResponseCache cache = new HttpResponseCache(1000, clock);
+
+    @Test
+    public void freshResponseIsServedUntilMaxAge() {
+        cache.recordMiss("key", "body", Map.of("Cache-Control", List.of("public, max-age=60")));
+
+        HttpResponseCache.Entry entry = cache.get("key");
+        Assertions.assertThat(entry.isFresh()).isTrue();
+
+        clock.advance(Duration.ofSeconds(61));
+        Assertions.assertThat(entry.isFresh()).isFalse();
+    }
+
+    @Test
+    public void notModifiedResponseRefreshesEntry() {
+        cache.recordMiss("key", "body", Map.of("ETag", List.of("\"v1\""), "Cache-Control", List.of("no-cache")));
+
+        HttpResponseCache.Entry stale = cache.get("key");
+        Assertions.assertThat(stale.isFresh()).isFalse();
+        Assertions.assertThat(stale.getValidators()).containsEntry("If-None-Match", "\"v1\"");
+
+        HttpResponseCache.Entry refreshed = cache
+                .recordNotModified("key", stale, Map.of("Cache-Control", List.of("max-age=10")));
+        Assertions.assertThat(refreshed.getBody()).isEqualTo("body");
+        Assertions.assertThat(refreshed.isFresh()).isTrue();
+        cache.recordHit(refreshed);
+
+        Assertions.assertThat(cache.getMisses()).isEqualTo(1);
+        Assertions.assertThat(cache.getRevalidations()).isEqualTo(1);
+        Assertions.assertThat(cache.getHits()).isEqualTo(1);
+        Assertions.assertThat(cache.getSavedBytes()).isEqualTo(8);
+        Assertions.assertThat(cache.getHitRatio()).isEqualTo(2.0 / 3);
+    }
+
+    @Test
+    public void uncacheableResponsesAreNotStored() {
+        cache.recordMiss("no-store", "body", Map.of("Cache-Control", List.of("no-store"), "ETag", List.of("\"v1\"")));
+        cache.recordMiss("no-validator", "body", Map.of());
+        cache.recordMiss("expired", "body", Map.of("Expires", List.of("0")));
+
+        Assertions.assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void responsesVaryingOnOtherHeadersAreNotStored() {
+        List<String> etag = List.of("\"v1\"");
+        cache.recordMiss("accept", "body", Map.of("ETag", etag, "Vary", List.of("Accept, Accept-Encoding")));
+        cache.recordMiss("user-agent", "body", Map.of("ETag", etag, "Vary", List.of("User-Agent")));
+        cache.recordMiss("any", "body", Map.of("ETag", etag, "Vary", List.of("*")));
+
+        Assertions.assertThat(cache.get("accept")).isNotNull();
+        Assertions.assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void keyDependsOnAcceptAndAuthorization() {
+        URI uri = URI.create("http://localhost/version");
+
+        Assertions.assertThat(HttpResponseCache.key(uri, null, "application/json"))
+                .isNotEqualTo(HttpResponseCache.key(uri, null, "text/plain"))
+                .isNotEqualTo(HttpResponseCache.key(uri, "Bearer x", "application/json"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        Map<String, List<String>> headers = Map.of("ETag", List.of("\"v1\""));
+        cache.recordMiss("first", "x".repeat(400), headers);
+        cache.recordMiss("second", "x".repeat(400), headers);
+        cache.get("first");
+        cache.recordMiss("third", "x".repeat(400), headers);
+
+        Assertions.assertThat(cache.get("first")).isNotNull();
+        Assertions.assertThat(cache.get("second")).isNull();
+        Assertions.assertThat(cache.get("third")).isNotNull();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
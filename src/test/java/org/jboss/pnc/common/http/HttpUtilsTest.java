@@ -17,12 +17,18 @@
  */
 package org.jboss.pnc.common.http;
 
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Optional;
+
 /**
  * @author <a href="mailto:matejonnet@gmail.com">Matej Lazar</a>
  */
+@WireMockTest
 public class HttpUtilsTest {
 
     @Test
@@ -33,4 +39,50 @@ public class HttpUtilsTest {
         Assertions.assertThat(HttpUtils.isSuccess(226)).isTrue();
     }
 
+    @Test
+    public void testGetRequestsShareClient(WireMockRuntimeInfo wmRuntimeInfo) {
+        WireMock.stubFor(WireMock.get("/shared").willReturn(WireMock.okJson("{\"ok\":true}")));
+        String uri = wmRuntimeInfo.getHttpBaseUrl() + "/shared";
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThat(HttpUtils.performHttpGetRequest(uri, Optional.of("Bearer x")))
+                    .isEqualTo("{\"ok\":true}");
+        }
+
+        Assertions.assertThat(HttpUtils.getSharedHttpClient()).isSameAs(HttpUtils.getSharedHttpClient());
+        WireMock.verify(
+                3,
+                WireMock.getRequestedFor(WireMock.urlEqualTo("/shared"))
+                        .withHeader("Authorization", WireMock.equalTo("Bearer x")));
+    }
+
+    @Test
+    public void testGetRequestRevalidatesCachedResponse(WireMockRuntimeInfo wmRuntimeInfo) {
+        WireMock.stubFor(
+                WireMock.get("/cached")
+                        .withHeader("If-None-Match", WireMock.absent())
+                        .willReturn(WireMock.okJson("{\"ok\":true}").withHeader("ETag", "\"v1\"")));
+        WireMock.stubFor(
+                WireMock.get("/cached")
+                        .withHeader("If-None-Match", WireMock.equalTo("\"v1\""))
+                        .willReturn(WireMock.status(304)));
+        String uri = wmRuntimeInfo.getHttpBaseUrl() + "/cached";
+        HttpResponseCache cache = new HttpResponseCache(1000);
+        HttpUtils.setResponseCache(cache);
+        try {
+            for (int i = 0; i < 2; i++) {
+                Assertions.assertThat(HttpUtils.performHttpGetRequest(uri, Optional.empty()))
+                        .isEqualTo("{\"ok\":true}");
+            }
+        } finally {
+            HttpUtils.setResponseCache(null);
+        }
+
+        Assertions.assertThat(cache.getRevalidations()).isEqualTo(1);
+        WireMock.verify(
+                1,
+                WireMock.getRequestedFor(WireMock.urlEqualTo("/cached"))
+                        .withHeader("If-None-Match", WireMock.equalTo("\"v1\"")));
+    }
+
 }
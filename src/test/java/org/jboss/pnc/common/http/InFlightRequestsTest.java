@@ -0,0 +1,147 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InFlightRequestsTest {
+
+    private final InFlightRequests<String> inFlightRequests = new InFlightRequests<>();
+
+    @Test
+    public void concurrentRequestsShareOneExchange() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<String> first = CompletableFuture
+                .supplyAsync(() -> inFlightRequests.execute("key", () -> {
+                    sent.incrementAndGet();
+                    sending.countDown();
+                    await(release);
+                    return "response";
+                }, (value, error) -> {
+                }));
+        sending.await();
+
+        CompletableFuture<String> second = inFlightRequests.executeAsync("key", () -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        }, (value, error) -> {
+        });
+        release.countDown();
+
+        Assertions.assertThat(first.get()).isEqualTo("response");
+        Assertions.assertThat(second.get()).isEqualTo("response");
+        Assertions.assertThat(sent.get()).isEqualTo(1);
+        Assertions.assertThat(inFlightRequests.getShared()).isEqualTo(1);
+    }
+
+    @Test
+    public void completedRequestIsNotShared() {
+        inFlightRequests.execute("key", () -> "first", (value, error) -> {
+        });
+
+        String second = inFlightRequests.execute("key", () -> "second", (value, error) -> {
+        });
+
+        Assertions.assertThat(second).isEqualTo("second");
+        Assertions.assertThat(inFlightRequests.getShared()).isZero();
+    }
+
+    @Test
+    public void cancellingOnlyWaiterCancelsExchange() throws Exception {
+        CompletableFuture<String> exchange = new CompletableFuture<>();
+        CompletableFuture<String> first = inFlightRequests.executeAsync("key", () -> exchange, (value, error) -> {
+        });
+
+        first.cancel(true);
+
+        Assertions.assertThat(exchange.isCancelled()).isTrue();
+        CompletableFuture<String> second = inFlightRequests
+                .executeAsync("key", () -> CompletableFuture.completedFuture("second"), (value, error) -> {
+                });
+        Assertions.assertThat(second.get()).isEqualTo("second");
+        Assertions.assertThat(inFlightRequests.getShared()).isZero();
+    }
+
+    @Test
+    public void cancellingLastOfSharedWaitersCancelsExchange() throws Exception {
+        CompletableFuture<String> exchange = new CompletableFuture<>();
+        CompletableFuture<String> first = inFlightRequests.executeAsync("key", () -> exchange, (value, error) -> {
+        });
+        CompletableFuture<String> second = inFlightRequests
+                .executeAsync("key", () -> CompletableFuture.completedFuture("other"), (value, error) -> {
+                });
+
+        first.cancel(true);
+        Assertions.assertThat(exchange.isCancelled()).isFalse();
+        Assertions.assertThat(second.isDone()).isFalse();
+
+        second.cancel(true);
+        Assertions.assertThat(exchange.isCancelled()).isTrue();
+    }
+
+    @Test
+    public void cancellingOneOfSharedWaitersKeepsExchange() throws Exception {
+        CompletableFuture<String> exchange = new CompletableFuture<>();
+        CompletableFuture<String> first = inFlightRequests.executeAsync("key", () -> exchange, (value, error) -> {
+        });
+        CompletableFuture<String> second = inFlightRequests
+                .executeAsync("key", () -> CompletableFuture.completedFuture("other"), (value, error) -> {
+                });
+
+        second.cancel(true);
+        exchange.complete("response");
+
+        Assertions.assertThat(exchange.isCancelled()).isFalse();
+        Assertions.assertThat(first.get()).isEqualTo("response");
+    }
+
+    @Test
+    public void keyDependsOnAuthorizationButNotTrace() {
+        HttpRequest first = request("Bearer a", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+        HttpRequest second = request("Bearer a", "00-0af7651916cd43dd8448eb211c80319c-00f067aa0ba902b7-01");
+        HttpRequest other = request("Bearer b", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+
+        Assertions.assertThat(InFlightRequests.key(first)).isEqualTo(InFlightRequests.key(second));
+        Assertions.assertThat(InFlightRequests.key(first)).isNotEqualTo(InFlightRequests.key(other));
+    }
+
+    private static HttpRequest request(String authorization, String traceparent) {
+        return HttpRequest.newBuilder(URI.create("http://localhost/resource"))
+                .GET()
+                .header("Authorization", authorization)
+                .header("traceparent", traceparent)
+                .build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
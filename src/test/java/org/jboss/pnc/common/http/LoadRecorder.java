@@ -0,0 +1,171 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs a number of requests with a fixed concurrency and reports the throughput, latency percentiles and the bytes
+ * allocated per request. Allocation is the sum over all live threads, so it includes the threads of the client and of
+ * the stub server; threads ending during the run are not counted.
+ */
+class LoadRecorder {
+
+    private final int requests;
+    private final int concurrency;
+
+    LoadRecorder(int requests, int concurrency) {
+        this.requests = requests;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sends the requests from {@code concurrency} threads, each waiting for its response.
+     */
+    Result runSync(String name, Callable<?> request) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        LongAdder errors = new LongAdder();
+        ExecutorService threads = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch done = new CountDownLatch(concurrency);
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            threads.execute(() -> {
+                for (int index = next.getAndIncrement(); index < requests; index = next.getAndIncrement()) {
+                    long requestStart = System.nanoTime();
+                    try {
+                        request.call();
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                    latencies[index] = System.nanoTime() - requestStart;
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        threads.shutdown();
+        return new Result(name, latencies, elapsed, allocated, errors.sum());
+    }
+
+    /**
+     * Sends the requests from one thread, keeping at most {@code concurrency} of them in flight.
+     */
+    Result runAsync(String name, Supplier<CompletableFuture<?>> request) throws InterruptedException {
+        long[] latencies = new long[requests];
+        LongAdder errors = new LongAdder();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            inFlight.acquire();
+            long requestStart = System.nanoTime();
+            request.get().whenComplete((response, error) -> {
+                latencies[index] = System.nanoTime() - requestStart;
+                if (error != null) {
+                    errors.increment();
+                }
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        return new Result(name, latencies, elapsed, allocated, errors.sum());
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        return Arrays.stream(sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                .filter(bytes -> bytes > 0)
+                .sum();
+    }
+
+    static class Result {
+        private final String name;
+        private final long[] sortedLatencies;
+        private final long elapsedNanos;
+        private final long allocatedBytes;
+        private final long errors;
+
+        Result(String name, long[] latencies, long elapsedNanos, long allocatedBytes, long errors) {
+            this.name = name;
+            this.sortedLatencies = latencies.clone();
+            Arrays.sort(sortedLatencies);
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.errors = errors;
+        }
+
+        double requestsPerSecond() {
+            return sortedLatencies.length * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return latency in milliseconds below which the fraction of the requests completed
+         */
+        double percentile(double fraction) {
+            int index = (int) Math.ceil(fraction * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1e6;
+        }
+
+        long bytesPerRequest() {
+            return allocatedBytes / sortedLatencies.length;
+        }
+
+        long errors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%-28s %9.0f req/s   p50 %7.2f ms   p99 %7.2f ms   p999 %7.2f ms   %8d B/req   %d errors",
+                    name,
+                    requestsPerSecond(),
+                    percentile(0.5),
+                    percentile(0.99),
+                    percentile(0.999),
+                    bytesPerRequest(),
+                    errors);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.assertj.core.api.Assertions;
+import org.jboss.pnc.api.dto.Request;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Measures the throughput, latency percentiles and allocation per request of {@link PNCHttpClient} and
+ * {@link HttpUtils} against an embedded stub server. Skipped unless run with {@code -Dload=true}, e.g.
+ *
+ * <pre>
+ * mvn test -Dtest=PNCHttpClientLoadTest -Dload=true -Dload.concurrency=64 -Dload.latency=PT0.005s
+ * </pre>
+ *
+ * Other properties: {@code load.requests}, {@code load.jitter}, {@code load.bodySize}, {@code load.errorRate},
+ * {@code load.errorStatus}, {@code load.dropRate} and {@code load.retries}. Every scenario runs a tenth of the requests
+ * to warm up first, then prints one line of results.
+ */
+@EnabledIfSystemProperty(named = "load", matches = "true")
+public class PNCHttpClientLoadTest {
+
+    private static final int REQUESTS = Integer.getInteger("load.requests", 20000);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 32);
+    private static final int RETRIES = Integer.getInteger("load.retries", 0);
+
+    private static LoadStubServer server;
+    private static URI uri;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = new LoadStubServer();
+        server.setLatency(Duration.parse(System.getProperty("load.latency", "PT0.001s")));
+        server.setJitter(Duration.parse(System.getProperty("load.jitter", "PT0s")));
+        server.setBodySize(Integer.getInteger("load.bodySize", 1024));
+        server.setErrorRate(Double.parseDouble(System.getProperty("load.errorRate", "0")));
+        server.setErrorStatus(Integer.getInteger("load.errorStatus", 503));
+        server.setDropRate(Double.parseDouble(System.getProperty("load.dropRate", "0")));
+        uri = server.getUri().resolve("resource");
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        server.close();
+    }
+
+    @AfterAll
+    public static void restoreHttpUtils() {
+        HttpUtils.configure(HttpUtils.DEFAULT_CONFIG);
+    }
+
+    @Test
+    public void pncHttpClientSync() throws Exception {
+        try (PNCHttpClient client = new PNCHttpClient(config())) {
+            runSync("PNCHttpClient sync", () -> client.sendRequestForResponse(getRequest()));
+        }
+    }
+
+    @Test
+    public void pncHttpClientAsync() throws Exception {
+        try (PNCHttpClient client = new PNCHttpClient(config())) {
+            runAsync("PNCHttpClient async", () -> client.sendRequestForResponseAsync(getRequest()));
+        }
+    }
+
+    @Test
+    public void pncHttpClientAsyncPooled() throws Exception {
+        PNCHttpClientTest.TestConfig config = config();
+        config.executorConfig = new PNCHttpClientTest.TestExecutorConfig(4, false);
+        try (PNCHttpClient client = new PNCHttpClient(config)) {
+            runAsync("PNCHttpClient async, 4 threads", () -> client.sendRequestForResponseAsync(getRequest()));
+        }
+    }
+
+    @Test
+    public void pncHttpClientHttp11() throws Exception {
+        PNCHttpClientTest.TestConfig config = config();
+        config.forceHTTP11 = true;
+        try (PNCHttpClient client = new PNCHttpClient(config)) {
+            runSync("PNCHttpClient sync, HTTP/1.1", () -> client.sendRequestForResponse(getRequest()));
+        }
+    }
+
+    @Test
+    public void httpUtilsPooled() throws Exception {
+        HttpUtils.configure(new LoadHttpUtilsConfig());
+
+        runSync("HttpUtils pooled", () -> HttpUtils.performHttpGetRequest(uri, Optional.empty()));
+    }
+
+    private static void runSync(String name, Callable<?> request) throws InterruptedException {
+        new LoadRecorder(REQUESTS / 10, CONCURRENCY).runSync(name, request);
+        report(new LoadRecorder(REQUESTS, CONCURRENCY).runSync(name, request));
+    }
+
+    private static void runAsync(String name, Supplier<CompletableFuture<?>> request) throws InterruptedException {
+        new LoadRecorder(REQUESTS / 10, CONCURRENCY).runAsync(name, request);
+        report(new LoadRecorder(REQUESTS, CONCURRENCY).runAsync(name, request));
+    }
+
+    private static void report(LoadRecorder.Result result) {
+        System.out.println(result);
+        Assertions.assertThat(result.requestsPerSecond()).isPositive();
+    }
+
+    private static PNCHttpClientTest.TestConfig config() {
+        PNCHttpClientTest.TestConfig config = new PNCHttpClientTest.TestConfig();
+        config.retryConfig = new PNCHttpClientTest.TestRetryConfig(
+                Duration.ofMillis(10),
+                Duration.ofMillis(100),
+                RETRIES,
+                Duration.ofMinutes(1));
+        return config;
+    }
+
+    private static Request getRequest() {
+        return Request.builder().uri(uri).method(Request.Method.GET).build();
+    }
+
+    private static class LoadHttpUtilsConfig implements HttpUtilsConfig {
+        @Override
+        public int maxConnections() {
+            return Math.max(200, CONCURRENCY);
+        }
+
+        @Override
+        public int maxConnectionsPerRoute() {
+            return CONCURRENCY;
+        }
+
+        @Override
+        public Duration idleTimeout() {
+            return Duration.ofSeconds(30);
+        }
+
+        @Override
+        public Duration validateAfterInactivity() {
+            return Duration.ofSeconds(2);
+        }
+
+        @Override
+        public int retries() {
+            return RETRIES;
+        }
+
+        @Override
+        public boolean compressRequests() {
+            return false;
+        }
+
+        @Override
+        public int compressionThreshold() {
+            return 8192;
+        }
+    }
+}
@@ -17,6 +17,10 @@
  */
 package org.jboss.pnc.common.http;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import dev.failsafe.CircuitBreaker;
+import dev.failsafe.CircuitBreakerOpenException;
+import io.opentelemetry.api.OpenTelemetry;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.http.Fault;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
@@ -25,16 +29,33 @@ import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import org.assertj.core.api.Assertions;
+import org.jboss.pnc.api.constants.MDCHeaderKeys;
 import org.jboss.pnc.api.dto.Request;
+import org.jboss.pnc.common.Json;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
 
 import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 import static org.jboss.pnc.api.constants.HttpHeaders.AUTHORIZATION_STRING;
 import static org.jboss.pnc.api.constants.HttpHeaders.CONTENT_TYPE_STRING;
@@ -369,6 +390,609 @@ public class PNCHttpClientTest {
                         .withRequestBody(WireMock.absent()));
     }
 
+    @Test
+    public void sendRequestAsync_normally_succeeds() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        client.setAuthValueSupplier(() -> "Basic 1234");
+
+        CompletableFuture.allOf(client.trySendRequestAsync(createRequest()), client.sendRequestAsync(createRequest()))
+                .join();
+
+        WireMock.verify(
+                2,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader(CONTENT_TYPE_STRING, WireMock.equalTo(MediaType.APPLICATION_JSON))
+                        .withHeader(HEADER_NAME, WireMock.equalTo(HEADER_VALUE))
+                        .withHeader(AUTHORIZATION_STRING, WireMock.equalTo("Basic 1234"))
+                        .withRequestBody(WireMock.equalToJson(PAYLOAD_JSON)));
+    }
+
+    @Test
+    public void trySendRequestAsync_gets500_failsWithException() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.serverError()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        CompletableFuture<Void> future = client.trySendRequestAsync(createRequest());
+
+        Assertions.assertThatThrownBy(future::join)
+                .isInstanceOf(CompletionException.class)
+                .cause()
+                .isInstanceOf(PNCHttpClientException.class)
+                .hasMessageContainingAll(wiremockURI.toString(), ENDPOINT, "failed with status: 500");
+        WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void sendRequestAsync_gets500Always_willRetryAndFail() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.serverError()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        CompletableFuture<Void> future = client.sendRequestAsync(createRequest());
+
+        Assertions.assertThatThrownBy(future::join)
+                .isInstanceOf(CompletionException.class)
+                .cause()
+                .isInstanceOf(PNCHttpClientException.class)
+                .hasMessageContainingAll(wiremockURI.toString(), ENDPOINT, "failed with status: 500");
+        WireMock.verify(MAX_RETRIES + 1, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void sendRequestAsync_abortedStatus_doesNotRetry() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.notFound()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        client.setAbortRetriesOnStatus(status -> status == 404);
+
+        CompletableFuture<Void> future = client.sendRequestAsync(createRequest());
+
+        Assertions.assertThatThrownBy(future::join)
+                .cause()
+                .isInstanceOf(PNCHttpClientException.class)
+                .hasMessageContaining("failed with status: 404");
+        WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void sendRequestAsync_throwsExceptionOnce_willRetryAndSucceeds() {
+        String state2 = "Return 200 on second try";
+        WireMock.stubFor(
+                WireMock.post(ENDPOINT)
+                        .inScenario("asyncThrowsExceptionOnce")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willReturn(WireMock.aResponse().withFault(Fault.EMPTY_RESPONSE))
+                        .willSetStateTo(state2));
+        WireMock.stubFor(
+                WireMock.post(ENDPOINT)
+                        .inScenario("asyncThrowsExceptionOnce")
+                        .whenScenarioStateIs(state2)
+                        .willReturn(WireMock.ok()));
+
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        client.sendRequestAsync(createRequest()).join();
+
+        WireMock.verify(
+                2,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withRequestBody(WireMock.equalToJson(PAYLOAD_JSON)));
+    }
+
+    @Test
+    public void sendRequestAsync_cancelled_stopsRetrying() throws InterruptedException {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.serverError().withFixedDelay(500)));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        CompletableFuture<Void> future = client.sendRequestAsync(createRequest());
+        Thread.sleep(200);
+        future.cancel(true);
+        // longer than the delayed response and the first backoff together
+        Thread.sleep(2500);
+
+        Assertions.assertThat(future).isCancelled();
+        WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void sendRequestForResponseAsync_get_returnsBodyAndHeaders() {
+        String body = "{\"version\":\"1.2.3\"}";
+        WireMock.stubFor(WireMock.get(ENDPOINT).willReturn(WireMock.okJson(body).withHeader("X-Test", "yes")));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        Request request = Request.builder()
+                .uri(wiremockURI.resolve(ENDPOINT))
+                .method(Request.Method.GET)
+                .header(HEADER_NAME, HEADER_VALUE)
+                .build();
+
+        HttpResponse<String> response = client.sendRequestForResponseAsync(request).join();
+
+        Assertions.assertThat(response.statusCode()).isEqualTo(200);
+        Assertions.assertThat(response.body()).isEqualTo(body);
+        Assertions.assertThat(response.headers().firstValue("X-Test")).contains("yes");
+    }
+
+    @Test
+    public void sendRequestForResponse_responseCacheSet_revalidatesStaleResponse() {
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .withHeader("If-None-Match", WireMock.absent())
+                        .willReturn(
+                                WireMock.ok("cached")
+                                        .withHeader("ETag", "\"v1\"")
+                                        .withHeader("Cache-Control", "no-cache")));
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .withHeader("If-None-Match", WireMock.equalTo("\"v1\""))
+                        .willReturn(WireMock.status(304)));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        HttpResponseCache cache = new HttpResponseCache(1000);
+        client.setResponseCache(cache);
+
+        Assertions.assertThat(client.sendRequestForResponse(createGetRequest()).body()).isEqualTo("cached");
+        HttpResponse<String> revalidated = client.sendRequestForResponse(createGetRequest());
+        HttpResponse<String> revalidatedAsync = client.sendRequestForResponseAsync(createGetRequest()).join();
+
+        Assertions.assertThat(revalidated.statusCode()).isEqualTo(200);
+        Assertions.assertThat(revalidated.body()).isEqualTo("cached");
+        Assertions.assertThat(revalidatedAsync.body()).isEqualTo("cached");
+        Assertions.assertThat(cache.getMisses()).isEqualTo(1);
+        Assertions.assertThat(cache.getRevalidations()).isEqualTo(2);
+        WireMock.verify(
+                2,
+                WireMock.getRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader("If-None-Match", WireMock.equalTo("\"v1\"")));
+    }
+
+    @Test
+    public void sendRequestForStream_get_returnsStreamedBody() throws IOException {
+        String body = "{\"version\":\"1.2.3\"}";
+        WireMock.stubFor(WireMock.get(ENDPOINT).willReturn(WireMock.okJson(body)));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        HttpResponse<InputStream> response = client.sendRequestForStream(createGetRequest());
+
+        Assertions.assertThat(response.statusCode()).isEqualTo(200);
+        try (InputStream stream = response.body()) {
+            Assertions.assertThat(new String(stream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(body);
+        }
+    }
+
+    @Test
+    public void sendRequestForObject_get_deserializesBody() {
+        WireMock.stubFor(WireMock.get(ENDPOINT).willReturn(WireMock.okJson(PAYLOAD_JSON)));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        Map<String, Object> response = client
+                .sendRequestForObject(createGetRequest(), new TypeReference<Map<String, Object>>() {
+                });
+
+        Assertions.assertThat(response).containsEntry("foo", "bar").containsEntry("baz", 14);
+    }
+
+    @Test
+    public void sendRequestForObject_gets404_includesBoundedSnippet() {
+        WireMock.stubFor(WireMock.get(ENDPOINT).willReturn(WireMock.notFound().withBody("x".repeat(100_000))));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        client.setAbortRetriesOnStatus(status -> status == 404);
+
+        Assertions.assertThatThrownBy(() -> client.sendRequestForObject(createGetRequest(), Map.class))
+                .isInstanceOf(PNCHttpClientException.class)
+                .hasMessageContainingAll("failed with status: 404", ", body: " + "x".repeat(500) + "...")
+                .hasMessageNotContaining("x".repeat(501));
+    }
+
+    @Test
+    public void sendRequest_largePayloadRetried_sendsSameBody() throws IOException {
+        List<Map<String, Object>> payload = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            payload.add(Map.of("identifier", "org.example:artifact-" + i + ":1.0.0", "size", i));
+        }
+        String payloadJson = Json.newObjectMapper().writeValueAsString(payload);
+
+        String state2 = "Return 200 on second try";
+        WireMock.stubFor(
+                WireMock.post(ENDPOINT)
+                        .inScenario("largePayload")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willReturn(WireMock.serverError())
+                        .willSetStateTo(state2));
+        WireMock.stubFor(
+                WireMock.post(ENDPOINT)
+                        .inScenario("largePayload")
+                        .whenScenarioStateIs(state2)
+                        .willReturn(WireMock.ok()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        client.sendRequest(createRequest(), payload);
+
+        WireMock.verify(
+                2,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader(CONTENT_TYPE_STRING, WireMock.equalTo(MediaType.APPLICATION_JSON))
+                        .withHeader(
+                                "Content-Length",
+                                WireMock.equalTo(
+                                        String.valueOf(payloadJson.getBytes(StandardCharsets.UTF_8).length)))
+                        .withRequestBody(WireMock.equalToJson(payloadJson)));
+    }
+
+    @Test
+    public void sendRequest_largePayload_sentCompressed() throws IOException {
+        List<Map<String, Object>> payload = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            payload.add(Map.of("identifier", "org.example:artifact-" + i + ":1.0.0", "size", i));
+        }
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok()));
+        TestConfig config = new TestConfig();
+        config.compressionConfig = new TestCompressionConfig(false, true, 1024);
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        client.sendRequest(createRequest(), payload);
+        client.sendRequest(createRequest(), Map.of("small", true));
+
+        WireMock.verify(
+                1,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader("Content-Encoding", WireMock.equalTo("gzip")));
+        WireMock.verify(
+                1,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withoutHeader("Content-Encoding")
+                        .withRequestBody(WireMock.equalToJson("{\"small\":true}")));
+    }
+
+    @Test
+    public void sendRequestForResponse_gzipResponse_decoded() throws IOException {
+        String body = "{\"version\":\"1.2.3\"}";
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .willReturn(WireMock.ok().withHeader("Content-Encoding", "gzip").withBody(gzip(body))));
+        TestConfig config = new TestConfig();
+        config.compressionConfig = new TestCompressionConfig(true, false, 1024);
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        HttpResponse<String> response = client.sendRequestForResponse(createGetRequest());
+        HttpResponse<InputStream> streamed = client.sendRequestForStream(createGetRequest());
+
+        Assertions.assertThat(response.body()).isEqualTo(body);
+        try (InputStream stream = streamed.body()) {
+            Assertions.assertThat(new String(stream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(body);
+        }
+        WireMock.verify(
+                2,
+                WireMock.getRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader("Accept-Encoding", WireMock.equalTo("gzip")));
+    }
+
+    @Test
+    public void sendRequest_metricsEnabled_sendsRequests() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok()));
+        WireMock.stubFor(WireMock.get(ENDPOINT).willReturn(WireMock.notFound()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        client.setAbortRetriesOnStatus(status -> status == 404);
+
+        try (HttpClientMetrics metrics = new HttpClientMetrics(OpenTelemetry.noop())) {
+            client.setMetrics(metrics);
+
+            client.sendRequest(createRequest());
+            Assertions.assertThatThrownBy(() -> client.sendRequestForResponse(createGetRequest()))
+                    .isInstanceOf(PNCHttpClientException.class);
+            client.sendRequestAsync(createRequest()).join();
+        }
+
+        WireMock.verify(2, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void sendRequest_propagateHeaders_sendsMdcHeaders() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok()));
+        TestConfig config = new TestConfig();
+        config.tracingConfig = new TestTracingConfig(true, true);
+        PNCHttpClient client = new PNCHttpClient(config);
+        client.setTracer(OpenTelemetry.noop().getTracer("test"));
+
+        MDC.put(MDCHeaderKeys.REQUEST_CONTEXT.getMdcKey(), "context-1");
+        try {
+            client.sendRequest(createRequest());
+        } finally {
+            MDC.remove(MDCHeaderKeys.REQUEST_CONTEXT.getMdcKey());
+        }
+
+        WireMock.verify(
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader(MDCHeaderKeys.REQUEST_CONTEXT.getHeaderName(), WireMock.equalTo("context-1")));
+    }
+
+    @Test
+    public void sendRequest_credentialRejected_retriesWithNewCredential() {
+        WireMock.stubFor(
+                WireMock.post(ENDPOINT)
+                        .withHeader(AUTHORIZATION_STRING, WireMock.equalTo("Bearer token-1"))
+                        .willReturn(WireMock.unauthorized()));
+        WireMock.stubFor(
+                WireMock.post(ENDPOINT)
+                        .withHeader(AUTHORIZATION_STRING, WireMock.equalTo("Bearer token-2"))
+                        .willReturn(WireMock.ok()));
+        AtomicInteger fetched = new AtomicInteger();
+        CachingAuthSupplier authSupplier = new CachingAuthSupplier(
+                () -> new CachingAuthSupplier.Credential(
+                        "Bearer token-" + fetched.incrementAndGet(),
+                        Instant.now().plus(Duration.ofHours(1))));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        client.setAuthValueSupplier(authSupplier);
+
+        client.sendRequest(createRequest());
+        client.sendRequestAsync(createRequest()).join();
+
+        Assertions.assertThat(authSupplier.getInvalidations()).isEqualTo(1);
+        Assertions.assertThat(authSupplier.getFetches()).isEqualTo(2);
+        WireMock.verify(
+                1,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader(AUTHORIZATION_STRING, WireMock.equalTo("Bearer token-1")));
+        WireMock.verify(
+                2,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT))
+                        .withHeader(AUTHORIZATION_STRING, WireMock.equalTo("Bearer token-2")));
+    }
+
+    @Test
+    public void sendRequest_retryBudgetExhausted_stopsRetrying() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.serverError()));
+        TestConfig config = new TestConfig();
+        config.retryBudgetConfig = new TestRetryBudgetConfig(true, 0.1, 0, 1);
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        Assertions.assertThatThrownBy(() -> client.sendRequest(createRequest()))
+                .isInstanceOf(RetryBudgetExhaustedException.class)
+                .hasMessageContaining("retry budget")
+                .hasCauseInstanceOf(PNCHttpClientException.class);
+
+        WireMock.verify(2, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+        RetryBudget budget = client.getRetryBudgets().get("http://" + wiremockURI.getAuthority());
+        Assertions.assertThat(budget.getRetries()).isEqualTo(1);
+        Assertions.assertThat(budget.getRejections()).isEqualTo(1);
+    }
+
+    @Test
+    public void sendRequest_executorSet_runsOnExecutor() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok()));
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            PNCHttpClient client = new PNCHttpClient(Json.newObjectMapper(), CONFIG, task -> {
+                tasks.incrementAndGet();
+                pool.execute(task);
+            });
+
+            client.sendRequest(createRequest());
+            client.sendRequestAsync(createRequest()).join();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Assertions.assertThat(tasks.get()).isPositive();
+        WireMock.verify(2, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void sendRequest_threadsConfigured_sendsRequests() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok()));
+        TestConfig config = new TestConfig();
+        config.executorConfig = new TestExecutorConfig(2, false);
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        client.sendRequestAsync(createRequest()).join();
+
+        Assertions.assertThat(client.getExecutor()).isNotNull();
+        WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void close_threadsConfigured_shutsDownOwnExecutorOnly() {
+        TestConfig config = new TestConfig();
+        config.executorConfig = new TestExecutorConfig(2, false);
+        PNCHttpClient client = new PNCHttpClient(config);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        PNCHttpClient clientWithExecutor = new PNCHttpClient(Json.newObjectMapper(), config, executor);
+
+        client.close();
+        clientWithExecutor.close();
+
+        Assertions.assertThat(((ExecutorService) client.getExecutor()).isShutdown()).isTrue();
+        Assertions.assertThat(executor.isShutdown()).isFalse();
+        executor.shutdown();
+    }
+
+    @Test
+    public void warmUp_sendsHeadRequests() {
+        WireMock.stubFor(WireMock.head(WireMock.urlEqualTo("/")).willReturn(WireMock.ok()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        client.warmUp(List.of(wiremockURI.resolve("/"), URI.create("http://localhost:1/"))).join();
+
+        WireMock.verify(1, WireMock.headRequestedFor(WireMock.urlEqualTo("/")));
+    }
+
+    @Test
+    public void keepWarm_repeatsWarmUp() throws InterruptedException {
+        WireMock.stubFor(WireMock.head(WireMock.urlEqualTo("/")).willReturn(WireMock.ok()));
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+
+        ScheduledFuture<?> keepingWarm = client.keepWarm(List.of(wiremockURI.resolve("/")), Duration.ofMillis(50));
+        Thread.sleep(500);
+        keepingWarm.cancel(false);
+
+        Assertions.assertThat(WireMock.findAll(WireMock.headRequestedFor(WireMock.urlEqualTo("/"))).size())
+                .isGreaterThan(1);
+    }
+
+    @Test
+    public void keepWarm_intervalNotPositive_fails() {
+        PNCHttpClient client = new PNCHttpClient(CONFIG);
+        List<URI> uris = List.of(wiremockURI.resolve("/"));
+
+        Assertions.assertThatThrownBy(() -> client.keepWarm(uris, Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        // sub-millisecond intervals are valid
+        client.keepWarm(uris, Duration.ofNanos(500_000)).cancel(false);
+    }
+
+    @Test
+    public void close_keepWarmConfigured_stopsWarmUps() throws InterruptedException {
+        WireMock.stubFor(WireMock.head(WireMock.urlEqualTo("/")).willReturn(WireMock.ok()));
+        TestConfig config = new TestConfig();
+        config.warmupConfig = new TestWarmupConfig(List.of(wiremockURI.resolve("/")), "HEAD", Duration.ofMillis(50));
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        Thread.sleep(300);
+        client.close();
+        // let the warm-ups in flight complete
+        Thread.sleep(100);
+        int warmUps = WireMock.findAll(WireMock.headRequestedFor(WireMock.urlEqualTo("/"))).size();
+        Thread.sleep(300);
+
+        Assertions.assertThat(warmUps).isGreaterThan(1);
+        Assertions.assertThat(WireMock.findAll(WireMock.headRequestedFor(WireMock.urlEqualTo("/"))))
+                .hasSize(warmUps);
+    }
+
+    @Test
+    public void sendRequestForResponse_deduplicationEnabled_sharesConcurrentRequests() {
+        WireMock.stubFor(WireMock.get(ENDPOINT).willReturn(WireMock.ok("shared").withFixedDelay(300)));
+        TestConfig config = new TestConfig();
+        config.deduplicationConfig = new TestDeduplicationConfig(true);
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            responses.add(client.sendRequestForResponseAsync(createGetRequest()));
+        }
+        HttpResponse<String> response = client.sendRequestForResponse(createGetRequest());
+
+        Assertions.assertThat(response.body()).isEqualTo("shared");
+        for (CompletableFuture<HttpResponse<String>> shared : responses) {
+            Assertions.assertThat(shared.join().body()).isEqualTo("shared");
+        }
+        WireMock.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+        Assertions.assertThat(client.getSharedRequests()).isEqualTo(3);
+    }
+
+    @Test
+    public void sendRequest_circuitBreakerOpen_failsFast() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.serverError()));
+        TestConfig config = new TestConfig();
+        config.circuitBreakerConfig = new TestCircuitBreakerConfig(true, 2, Duration.ofMinutes(1), 1);
+        PNCHttpClient client = new PNCHttpClient(config);
+        List<CircuitBreaker.State> states = new ArrayList<>();
+        client.setCircuitBreakerListener((host, state) -> states.add(state));
+
+        Assertions.assertThatThrownBy(() -> client.sendRequest(createRequest()))
+                .isInstanceOf(PNCHttpClientException.class)
+                .hasMessageContaining("circuit breaker of " + wiremockURI + " is open");
+        Assertions.assertThatThrownBy(() -> client.trySendRequest(createRequest()))
+                .isInstanceOf(PNCHttpClientException.class)
+                .hasCauseInstanceOf(CircuitBreakerOpenException.class);
+
+        WireMock.verify(2, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+        Assertions.assertThat(states).containsExactly(CircuitBreaker.State.OPEN);
+        Assertions.assertThat(client.getCircuitBreakers()).hasSize(1);
+    }
+
+    @Test
+    public void sendRequestForResponse_slowResponse_hedgedRequestWins() {
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .inScenario("hedging")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willReturn(WireMock.ok("slow").withFixedDelay(5000))
+                        .willSetStateTo("hedged"));
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .inScenario("hedging")
+                        .whenScenarioStateIs("hedged")
+                        .willReturn(WireMock.ok("fast")));
+        TestConfig config = new TestConfig();
+        config.hedgingConfig = new TestHedgingConfig(true, Duration.ofMillis(200), 0.95, Duration.ofMillis(50), 0.1);
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = client.sendRequestForResponse(createGetRequest());
+
+        Assertions.assertThat(response.body()).isEqualTo("fast");
+        Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(4));
+        WireMock.verify(2, WireMock.getRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+        RequestHedger hedger = client.getHedgers().get(wiremockURI.toString());
+        Assertions.assertThat(hedger.getHedges()).isEqualTo(1);
+        Assertions.assertThat(hedger.getHedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    public void sendRequestForResponse_circuitBreakerHalfOpen_cancelledHedgeRecordsNothing() {
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .inScenario("hedging")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willReturn(WireMock.ok("warm"))
+                        .willSetStateTo("slow"));
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .inScenario("hedging")
+                        .whenScenarioStateIs("slow")
+                        .willReturn(WireMock.ok("slow").withFixedDelay(5000))
+                        .willSetStateTo("hedged"));
+        WireMock.stubFor(
+                WireMock.get(ENDPOINT)
+                        .inScenario("hedging")
+                        .whenScenarioStateIs("hedged")
+                        .willReturn(WireMock.ok("fast")));
+        TestConfig config = new TestConfig();
+        config.circuitBreakerConfig = new TestCircuitBreakerConfig(true, 1, Duration.ofMinutes(1), 2);
+        config.hedgingConfig = new TestHedgingConfig(true, Duration.ofMillis(200), 0.95, Duration.ofMillis(50), 1);
+        PNCHttpClient client = new PNCHttpClient(config);
+        List<CircuitBreaker.State> states = new ArrayList<>();
+        client.setCircuitBreakerListener((host, state) -> states.add(state));
+        client.sendRequestForResponse(createGetRequest());
+        client.getCircuitBreakers().get(wiremockURI.toString()).halfOpen();
+
+        HttpResponse<String> hedged = client.sendRequestForResponse(createGetRequest());
+        HttpResponse<String> probe = client.sendRequestForResponse(createGetRequest());
+
+        Assertions.assertThat(hedged.body()).isEqualTo("fast");
+        Assertions.assertThat(probe.body()).isEqualTo("fast");
+        Assertions.assertThat(client.getHedgers().get(wiremockURI.toString()).getHedgeWins()).isEqualTo(1);
+        Assertions.assertThat(states).containsExactly(CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void sendRequest_hedgingEnabled_postNotHedged() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok().withFixedDelay(500)));
+        TestConfig config = new TestConfig();
+        config.hedgingConfig = new TestHedgingConfig(true, Duration.ofMillis(100), 0.95, Duration.ofMillis(50), 1);
+        PNCHttpClient client = new PNCHttpClient(config);
+
+        client.sendRequest(createRequest());
+
+        WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+        Assertions.assertThat(client.getHedgers()).isEmpty();
+    }
+
+    private Request createGetRequest() {
+        return Request.builder()
+                .uri(wiremockURI.resolve(ENDPOINT))
+                .method(Request.Method.GET)
+                .header(HEADER_NAME, HEADER_VALUE)
+                .build();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
     @AllArgsConstructor
     @NoArgsConstructor
     public static class TestConfig implements PNCHttpClientConfig {
@@ -376,6 +1000,15 @@ public class PNCHttpClientTest {
         Duration requestTimeout = Duration.ofSeconds(60);
         boolean forceHTTP11 = false;
         RetryConfig retryConfig = new TestRetryConfig();
+        ConcurrencyLimitConfig concurrencyLimitConfig = new TestConcurrencyLimitConfig();
+        CircuitBreakerConfig circuitBreakerConfig = new TestCircuitBreakerConfig();
+        HedgingConfig hedgingConfig = new TestHedgingConfig();
+        CompressionConfig compressionConfig = new TestCompressionConfig();
+        TracingConfig tracingConfig = new TestTracingConfig();
+        RetryBudgetConfig retryBudgetConfig = new TestRetryBudgetConfig();
+        ExecutorConfig executorConfig = new TestExecutorConfig();
+        WarmupConfig warmupConfig = new TestWarmupConfig();
+        DeduplicationConfig deduplicationConfig = new TestDeduplicationConfig();
 
         @Override
         public RetryConfig retryConfig() {
@@ -396,6 +1029,51 @@ public class PNCHttpClientTest {
         public boolean forceHTTP11() {
             return forceHTTP11;
         }
+
+        @Override
+        public ConcurrencyLimitConfig concurrencyLimitConfig() {
+            return concurrencyLimitConfig;
+        }
+
+        @Override
+        public CircuitBreakerConfig circuitBreakerConfig() {
+            return circuitBreakerConfig;
+        }
+
+        @Override
+        public HedgingConfig hedgingConfig() {
+            return hedgingConfig;
+        }
+
+        @Override
+        public CompressionConfig compressionConfig() {
+            return compressionConfig;
+        }
+
+        @Override
+        public TracingConfig tracingConfig() {
+            return tracingConfig;
+        }
+
+        @Override
+        public RetryBudgetConfig retryBudgetConfig() {
+            return retryBudgetConfig;
+        }
+
+        @Override
+        public ExecutorConfig executorConfig() {
+            return executorConfig;
+        }
+
+        @Override
+        public WarmupConfig warmupConfig() {
+            return warmupConfig;
+        }
+
+        @Override
+        public DeduplicationConfig deduplicationConfig() {
+            return deduplicationConfig;
+        }
     }
 
     @AllArgsConstructor
@@ -427,4 +1105,235 @@ public class PNCHttpClientTest {
         }
     }
 
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestConcurrencyLimitConfig implements PNCHttpClientConfig.ConcurrencyLimitConfig {
+        boolean enabled = false;
+        int initialLimit = 2;
+        int minLimit = 1;
+        int maxLimit = 10;
+        double backoffRatio = 0.5;
+        Duration latencyThreshold = Duration.ofSeconds(5);
+        Duration maxWait = Duration.ZERO;
+
+        @Override
+        public boolean enabled() {
+            return enabled;
+        }
+
+        @Override
+        public int initialLimit() {
+            return initialLimit;
+        }
+
+        @Override
+        public int minLimit() {
+            return minLimit;
+        }
+
+        @Override
+        public int maxLimit() {
+            return maxLimit;
+        }
+
+        @Override
+        public double backoffRatio() {
+            return backoffRatio;
+        }
+
+        @Override
+        public Duration latencyThreshold() {
+            return latencyThreshold;
+        }
+
+        @Override
+        public Duration maxWait() {
+            return maxWait;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestCircuitBreakerConfig implements PNCHttpClientConfig.CircuitBreakerConfig {
+        boolean enabled = false;
+        int failureThreshold = 2;
+        Duration delay = Duration.ofMinutes(1);
+        int successThreshold = 1;
+
+        @Override
+        public boolean enabled() {
+            return enabled;
+        }
+
+        @Override
+        public int failureThreshold() {
+            return failureThreshold;
+        }
+
+        @Override
+        public Duration delay() {
+            return delay;
+        }
+
+        @Override
+        public int successThreshold() {
+            return successThreshold;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestHedgingConfig implements PNCHttpClientConfig.HedgingConfig {
+        boolean enabled = false;
+        Duration delay = Duration.ZERO;
+        double percentile = 0.95;
+        Duration minDelay = Duration.ofMillis(50);
+        double budget = 0.1;
+
+        @Override
+        public boolean enabled() {
+            return enabled;
+        }
+
+        @Override
+        public Duration delay() {
+            return delay;
+        }
+
+        @Override
+        public double percentile() {
+            return percentile;
+        }
+
+        @Override
+        public Duration minDelay() {
+            return minDelay;
+        }
+
+        @Override
+        public double budget() {
+            return budget;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestCompressionConfig implements PNCHttpClientConfig.CompressionConfig {
+        boolean decompressResponses = false;
+        boolean compressRequests = false;
+        int compressionThreshold = 8192;
+
+        @Override
+        public boolean decompressResponses() {
+            return decompressResponses;
+        }
+
+        @Override
+        public boolean compressRequests() {
+            return compressRequests;
+        }
+
+        @Override
+        public int compressionThreshold() {
+            return compressionThreshold;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestTracingConfig implements PNCHttpClientConfig.TracingConfig {
+        boolean propagateHeaders = false;
+        boolean clientSpans = false;
+
+        @Override
+        public boolean propagateHeaders() {
+            return propagateHeaders;
+        }
+
+        @Override
+        public boolean clientSpans() {
+            return clientSpans;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestRetryBudgetConfig implements PNCHttpClientConfig.RetryBudgetConfig {
+        boolean enabled = false;
+        double ratio = 0.1;
+        double minRetriesPerSecond = 1;
+        int burst = 100;
+
+        @Override
+        public boolean enabled() {
+            return enabled;
+        }
+
+        @Override
+        public double ratio() {
+            return ratio;
+        }
+
+        @Override
+        public double minRetriesPerSecond() {
+            return minRetriesPerSecond;
+        }
+
+        @Override
+        public int burst() {
+            return burst;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestExecutorConfig implements PNCHttpClientConfig.ExecutorConfig {
+        int threads = 0;
+        boolean virtualThreads = false;
+
+        @Override
+        public int threads() {
+            return threads;
+        }
+
+        @Override
+        public boolean virtualThreads() {
+            return virtualThreads;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestWarmupConfig implements PNCHttpClientConfig.WarmupConfig {
+        List<URI> uris = null;
+        String method = "HEAD";
+        Duration keepWarmInterval = Duration.ZERO;
+
+        @Override
+        public Optional<List<URI>> uris() {
+            return Optional.ofNullable(uris);
+        }
+
+        @Override
+        public String method() {
+            return method;
+        }
+
+        @Override
+        public Duration keepWarmInterval() {
+            return keepWarmInterval;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestDeduplicationConfig implements PNCHttpClientConfig.DeduplicationConfig {
+        boolean enabled = false;
+
+        @Override
+        public boolean enabled() {
+            return enabled;
+        }
+    }
+
 }
@@ -0,0 +1,154 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import org.assertj.core.api.Assertions;
+import org.jboss.pnc.api.dto.Request;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+@WireMockTest
+public class RequestBatcherTest {
+    private static final String ENDPOINT = "/status";
+    private static final String BATCH_ENDPOINT = "/status/batch";
+    private static URI wiremockURI;
+
+    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+    private final PNCHttpClient client = new PNCHttpClient(PNCHttpClientTest.CONFIG);
+
+    @BeforeAll
+    public static void setup(WireMockRuntimeInfo wmRuntimeInfo) {
+        wiremockURI = URI.create(wmRuntimeInfo.getHttpBaseUrl());
+    }
+
+    @Test
+    public void fullBatchIsSentToBatchEndpoint() {
+        WireMock.stubFor(WireMock.post(BATCH_ENDPOINT).willReturn(WireMock.ok()));
+        RequestBatcher batcher = new RequestBatcher(
+                executor,
+                client,
+                new TestBatcherConfig(3, Duration.ofMinutes(1), 100),
+                request -> wiremockURI.resolve(BATCH_ENDPOINT));
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(batcher.submit(createRequest(), Map.of("id", i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        WireMock.verify(
+                1,
+                WireMock.postRequestedFor(WireMock.urlEqualTo(BATCH_ENDPOINT))
+                        .withRequestBody(WireMock.equalToJson("[{\"id\":0},{\"id\":1},{\"id\":2}]")));
+        WireMock.verify(0, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void lingeringBatchIsSentOnItsOwnWithoutBatchEndpoint() {
+        WireMock.stubFor(WireMock.post(ENDPOINT).willReturn(WireMock.ok()));
+        RequestBatcher batcher = new RequestBatcher(
+                executor,
+                client,
+                new TestBatcherConfig(100, Duration.ofMillis(50), 100),
+                null);
+
+        CompletableFuture<Void> first = batcher.submit(createRequest(), Map.of("id", 1));
+        CompletableFuture<Void> second = batcher.submit(createRequest(), Map.of("id", 2));
+        CompletableFuture.allOf(first, second).join();
+
+        WireMock.verify(2, WireMock.postRequestedFor(WireMock.urlEqualTo(ENDPOINT)));
+    }
+
+    @Test
+    public void failedBatchFailsAllRequests() {
+        WireMock.stubFor(WireMock.post(BATCH_ENDPOINT).willReturn(WireMock.badRequest()));
+        client.setAbortRetriesOnStatus(status -> status == 400);
+        RequestBatcher batcher = new RequestBatcher(
+                executor,
+                client,
+                new TestBatcherConfig(2, Duration.ofMinutes(1), 100),
+                request -> wiremockURI.resolve(BATCH_ENDPOINT));
+
+        CompletableFuture<Void> first = batcher.submit(createRequest(), Map.of("id", 1));
+        CompletableFuture<Void> second = batcher.submit(createRequest(), Map.of("id", 2));
+
+        for (CompletableFuture<Void> future : List.of(first, second)) {
+            Assertions.assertThatThrownBy(future::join)
+                    .cause()
+                    .isInstanceOf(PNCHttpClientException.class)
+                    .hasMessageContaining("failed with status: 400");
+        }
+    }
+
+    @Test
+    public void requestsOverLimitAreRejected() {
+        RequestBatcher batcher = new RequestBatcher(
+                executor,
+                client,
+                new TestBatcherConfig(100, Duration.ofMinutes(1), 1),
+                null);
+
+        batcher.submit(createRequest(), Map.of("id", 1));
+        CompletableFuture<Void> rejected = batcher.submit(createRequest(), Map.of("id", 2));
+
+        Assertions.assertThat(rejected).isCompletedExceptionally();
+    }
+
+    private Request createRequest() {
+        return Request.builder().uri(wiremockURI.resolve(ENDPOINT)).method(Request.Method.POST).build();
+    }
+
+    private static class TestBatcherConfig implements RequestBatcherConfig {
+        private final int maxBatchSize;
+        private final Duration linger;
+        private final int maxQueuedRequests;
+
+        private TestBatcherConfig(int maxBatchSize, Duration linger, int maxQueuedRequests) {
+            this.maxBatchSize = maxBatchSize;
+            this.linger = linger;
+            this.maxQueuedRequests = maxQueuedRequests;
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return maxBatchSize;
+        }
+
+        @Override
+        public Duration linger() {
+            return linger;
+        }
+
+        @Override
+        public int maxQueuedRequests() {
+            return maxQueuedRequests;
+        }
+    }
+}
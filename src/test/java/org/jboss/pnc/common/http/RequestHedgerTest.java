@@ -0,0 +1,116 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class RequestHedgerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void slowAttemptIsHedgedAndCancelled() throws Exception {
+        RequestHedger hedger = new RequestHedger("host", config(Duration.ofMillis(20), 1), scheduler);
+
+        CompletableFuture<String> result = hedger.hedge(this::attempt, value -> {
+        });
+        waitForAttempts(2);
+        attempts.get(1).complete("hedge");
+
+        Assertions.assertThat(result.get()).isEqualTo("hedge");
+        Assertions.assertThat(attempts.get(0).isCancelled()).isTrue();
+        Assertions.assertThat(hedger.getHedges()).isEqualTo(1);
+        Assertions.assertThat(hedger.getHedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    public void fastAttemptIsNotHedged() throws Exception {
+        RequestHedger hedger = new RequestHedger("host", config(Duration.ofMillis(20), 1), scheduler);
+
+        CompletableFuture<String> result = hedger.hedge(() -> CompletableFuture.completedFuture("fast"), value -> {
+        });
+        Thread.sleep(100);
+
+        Assertions.assertThat(result.get()).isEqualTo("fast");
+        Assertions.assertThat(hedger.getHedges()).isZero();
+    }
+
+    @Test
+    public void failedAttemptWaitsForTheOther() throws Exception {
+        RequestHedger hedger = new RequestHedger("host", config(Duration.ofMillis(20), 1), scheduler);
+
+        CompletableFuture<String> result = hedger.hedge(this::attempt, value -> {
+        });
+        waitForAttempts(2);
+        attempts.get(1).completeExceptionally(new IOException("reset"));
+        Assertions.assertThat(result.isDone()).isFalse();
+        attempts.get(0).complete("first");
+
+        Assertions.assertThat(result.get()).isEqualTo("first");
+        Assertions.assertThat(hedger.getHedgeWins()).isZero();
+    }
+
+    @Test
+    public void hedgesStopWhenBudgetIsUsedUp() throws Exception {
+        RequestHedger hedger = new RequestHedger("host", config(Duration.ofMillis(1), 0), scheduler);
+
+        for (int i = 0; i < 12; i++) {
+            CompletableFuture<String> result = hedger.hedge(this::attempt, value -> {
+            });
+            Thread.sleep(20);
+            attempts.get(attempts.size() - 1).complete("done");
+            result.get();
+        }
+
+        Assertions.assertThat(hedger.getHedges()).isEqualTo(10);
+        Assertions.assertThat(hedger.getOverBudget()).isEqualTo(2);
+    }
+
+    private static PNCHttpClientTest.TestHedgingConfig config(Duration delay, double budget) {
+        return new PNCHttpClientTest.TestHedgingConfig(true, delay, 0.95, Duration.ofMillis(1), budget);
+    }
+
+    private CompletableFuture<String> attempt() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    private void waitForAttempts(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && attempts.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertThat(attempts).hasSize(count);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2021 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.common.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RetryBudgetTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void retriesAreLimitedToBurst() {
+        RetryBudget budget = budget(0.1, 0, 2);
+
+        Assertions.assertThat(budget.tryRetry()).isTrue();
+        Assertions.assertThat(budget.tryRetry()).isTrue();
+        Assertions.assertThat(budget.tryRetry()).isFalse();
+        Assertions.assertThat(budget.getRetries()).isEqualTo(2);
+        Assertions.assertThat(budget.getRejections()).isEqualTo(1);
+    }
+
+    @Test
+    public void successesPayForRetries() {
+        RetryBudget budget = budget(0.5, 0, 1);
+        budget.tryRetry();
+
+        budget.recordSuccess();
+        Assertions.assertThat(budget.tryRetry()).isFalse();
+        budget.recordSuccess();
+        budget.recordSuccess();
+        Assertions.assertThat(budget.tryRetry()).isTrue();
+    }
+
+    @Test
+    public void reserveRefillsOverTime() {
+        RetryBudget budget = budget(0, 2, 10);
+        for (int i = 0; i < 10; i++) {
+            budget.tryRetry();
+        }
+        Assertions.assertThat(budget.tryRetry()).isFalse();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assertions.assertThat(budget.getBalance()).isEqualTo(2);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        Assertions.assertThat(budget.getBalance()).isEqualTo(10);
+    }
+
+    private RetryBudget budget(double ratio, double minRetriesPerSecond, int burst) {
+        return new RetryBudget(
+                "host",
+                new PNCHttpClientTest.TestRetryBudgetConfig(true, ratio, minRetriesPerSecond, burst),
+                now::get);
+    }
+}
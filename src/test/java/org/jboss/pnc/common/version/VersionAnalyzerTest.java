@@ -2,6 +2,8 @@ package org.jboss.pnc.common.version;
 
 import org.jboss.pnc.api.dependencyanalyzer.dto.QualifiedVersion;
 import org.jboss.pnc.api.enums.Qualifier;
+import org.jboss.pnc.common.alignment.ranking.EvaluationProfile;
+import org.jboss.pnc.common.alignment.ranking.VersionIndex;
 import org.jboss.pnc.common.alignment.ranking.VersionStrategy;
 import org.junit.jupiter.api.Test;
 
@@ -16,6 +18,7 @@ import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -1091,6 +1094,62 @@ public class VersionAnalyzerTest {
         expectOrder(versionAnalyzer, expectedOrder, version, versions);
     }
 
+    @Test
+    public void testExplainBiggestMatchingVersion() {
+        VersionStrategy strat = VersionStrategy.from(List.of("PRODUCT:EAP", "QUALITY:RELEASED"), null, null);
+        VersionAnalyzer versionAnalyzer = new VersionAnalyzer(List.of("redhat"), strat);
+        EvaluationProfile profile = strat.getRanks().enableProfiling();
+
+        List<QualifiedVersion> versions = List.of(
+                new QualifiedVersion("1.4.0.redhat-3", Map.of(Qualifier.PRODUCT, Set.of("EAP"))),
+                new QualifiedVersion(
+                        "1.4.0.redhat-2",
+                        Map.of(Qualifier.QUALITY, Set.of("RELEASED"), Qualifier.PRODUCT, Set.of("EAP"))),
+                new QualifiedVersion("1.4.0.redhat-1", Map.of(Qualifier.QUALITY, Set.of("RELEASED"))));
+
+        MatchExplanation explanation = versionAnalyzer.explainBiggestMatchingVersion("1.4.0", versions);
+
+        assertEquals("1.4.0.redhat-2", explanation.getVersion());
+        assertEquals(3, explanation.getCandidates());
+        assertEquals(1, explanation.getDecidingRank());
+        assertEquals("QUALITY:RELEASED", explanation.getDecidingRankExpression());
+
+        List<EvaluationProfile.Entry> entries = profile.getEntries();
+        assertEquals(
+                List.of("PRODUCT:EAP", "QUALITY:RELEASED", "SUFFIX-VERSION"),
+                entries.stream().map(EvaluationProfile.Entry::getLabel).collect(Collectors.toList()));
+        assertTrue(entries.get(0).getEvaluations() > 0);
+        assertTrue(entries.get(1).getDecisions() > 0);
+    }
+
+    @Test
+    public void testFindBiggestMatchingVersionInIndex() {
+        VersionStrategy strat = VersionStrategy.from(List.of("QUALITY:RELEASED"), "PRODUCT:EAP", "QUALITY:DELETE");
+        VersionAnalyzer versionAnalyzer = new VersionAnalyzer(List.of("redhat"), strat);
+
+        VersionIndex index = new VersionIndex(
+                List.of(
+                        new QualifiedVersion(
+                                "1.4.0.redhat-4",
+                                Map.of(Qualifier.QUALITY, Set.of("DELETE"), Qualifier.PRODUCT, Set.of("EAP"))),
+                        new QualifiedVersion("1.4.0.redhat-3", Map.of(Qualifier.PRODUCT, Set.of("RHSSO"))),
+                        new QualifiedVersion("1.4.0.redhat-2", Map.of(Qualifier.PRODUCT, Set.of("EAP"))),
+                        new QualifiedVersion("1.4.0.redhat-1", Map.of(Qualifier.PRODUCT, Set.of("EAP"))),
+                        new QualifiedVersion("1.5.0.redhat-1", Map.of(Qualifier.PRODUCT, Set.of("EAP")))));
+
+        assertEquals(Optional.of("1.4.0.redhat-2"), versionAnalyzer.findBiggestMatchingVersion("1.4.0", index));
+        assertEquals(Optional.of("1.5.0.redhat-1"), versionAnalyzer.findBiggestMatchingVersion("1.5.0", index));
+        assertEquals(Optional.empty(), versionAnalyzer.findBiggestMatchingVersion("1.6.0", index));
+    }
+
+    @Test
+    public void testExplainNoMatchingVersion() {
+        MatchExplanation explanation = versionFinder.explainBiggestMatchingVersion("0.0.1", Collections.emptyList());
+
+        assertNull(explanation.getVersion());
+        assertEquals(-1, explanation.getDecidingRank());
+    }
+
     private void expectOrder(
             VersionAnalyzer versionAnalyzer,
             String[] expectedOrder,